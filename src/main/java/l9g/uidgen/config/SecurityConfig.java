@@ -16,13 +16,18 @@
 package l9g.uidgen.config;
 
 import l9g.uidgen.token.BearerTokenConfig;
+import l9g.uidgen.token.BearerTokenRegistry;
+import l9g.uidgen.token.TokenRateLimiter;
+import l9g.uidgen.token.TooManyRequestsException;
+import l9g.uidgen.token.TooManyUidsException;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Map;
-import l9g.uidgen.crypto.CryptoHandler;
+import java.util.concurrent.TimeUnit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -50,9 +55,7 @@ import org.springframework.web.servlet.HandlerExceptionResolver;
 @Slf4j
 public class SecurityConfig
 {
-  private final BearerTokenConfig bearerTokenConfig;
-
-  private final CryptoHandler cryptoHandler;
+  private final BearerTokenRegistry bearerTokenRegistry;
 
   @Bean
   public AuthenticationEntryPoint authenticationEntryPoint(
@@ -65,7 +68,8 @@ public class SecurityConfig
   }
 
   @Bean
-  SecurityFilterChain securityFilterChain(HttpSecurity http, AuthenticationEntryPoint authenticationEntryPoint)
+  SecurityFilterChain securityFilterChain(HttpSecurity http, AuthenticationEntryPoint authenticationEntryPoint,
+    @Qualifier("handlerExceptionResolver") HandlerExceptionResolver resolver)
     throws Exception
   {
     http
@@ -79,7 +83,7 @@ public class SecurityConfig
       .authenticationEntryPoint(authenticationEntryPoint)
     );
 
-    http.addFilterBefore(new StaticBearerTokenFilter(bearerTokenConfig, cryptoHandler),
+    http.addFilterBefore(new StaticBearerTokenFilter(bearerTokenRegistry, resolver),
       AbstractPreAuthenticatedProcessingFilter.class);
 
     http.authorizeHttpRequests(auth -> auth
@@ -92,19 +96,15 @@ public class SecurityConfig
 
   static class StaticBearerTokenFilter extends OncePerRequestFilter
   {
-    private final Map<String, BearerTokenConfig.BearerToken> tokensByName;
+    private final BearerTokenRegistry registry;
 
-    private final Map<String, String> tokenIndex;
+    private final HandlerExceptionResolver resolver;
 
-    StaticBearerTokenFilter(BearerTokenConfig config, CryptoHandler cryptoHandler)
+    StaticBearerTokenFilter(BearerTokenRegistry registry,
+      HandlerExceptionResolver resolver)
     {
-      this.tokensByName = config.getMap();
-      this.tokenIndex = tokensByName.entrySet().stream()
-        .collect(java.util.stream.Collectors.toUnmodifiableMap(
-          e -> cryptoHandler.decrypt(e.getValue().getToken()),
-          Map.Entry :: getKey,
-          (a, b) -> a
-        ));
+      this.registry = registry;
+      this.resolver = resolver;
     }
 
     @Override
@@ -128,25 +128,28 @@ public class SecurityConfig
         return;
       }
 
-      String name = tokenIndex.get(token);
+      String name = registry.authenticate(token);
       if(name == null)
       {
         chain.doFilter(request, response);
         return;
       }
 
-      BearerTokenConfig.BearerToken bt = tokensByName.get(name);
-      if(bt == null ||  ! bt.isEnabled())
-      {
-        chain.doFilter(request, response);
-        return;
-      }
+      BearerTokenConfig.BearerToken bt = registry.getToken(name);
 
       Authentication authToken = new StaticBearerAuthenticationToken(
         name,
         bt.getOwner(),
         AuthorityUtils.NO_AUTHORITIES
       );
+      TokenRateLimiter limiter = registry.getLimiter(name);
+      RuntimeException rejection = admit(limiter, bt, request);
+      if(rejection != null)
+      {
+        resolver.resolveException(request, response, null, rejection);
+        return;
+      }
+
       SecurityContextHolder.getContext().setAuthentication(authToken);
 
       try
@@ -156,9 +159,95 @@ public class SecurityConfig
       finally
       {
         SecurityContextHolder.clearContext();
+
+        if(request.isAsyncStarted())
+        {
+          // streamed responses are running until the async request completes
+          request.getAsyncContext().addListener(new LimiterExitListener(limiter));
+        }
+        else
+        {
+          limiter.exit();
+        }
       }
     }
 
+    /**
+     * @return the reason to reject the request, {@code null} if it is
+     *         admitted; an admitted request has entered the limiter
+     */
+    private static RuntimeException admit(TokenRateLimiter limiter,
+      BearerTokenConfig.BearerToken bt, HttpServletRequest request)
+    {
+      String n = request.getParameter("n");
+      if(n != null)
+      {
+        try
+        {
+          if( ! limiter.admitsUids(Integer.parseInt(n.trim())))
+          {
+            return new TooManyUidsException(bt.getOwner(), limiter.getMaxUids());
+          }
+        }
+        catch(NumberFormatException e)
+        {
+          // rejected by the controller
+        }
+      }
+
+      // a request rejected for concurrency must not use up the rate budget
+      if( ! limiter.enter())
+      {
+        return new TooManyRequestsException(bt.getOwner(),
+          "Too many concurrent requests", 1);
+      }
+
+      long wait = limiter.acquire();
+      if(wait > 0)
+      {
+        limiter.exit();
+        return new TooManyRequestsException(bt.getOwner(), "Rate limit exceeded",
+          Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999L)));
+      }
+
+      return null;
+    }
+
+  }
+
+  static class LimiterExitListener implements AsyncListener
+  {
+    private final TokenRateLimiter limiter;
+
+    LimiterExitListener(TokenRateLimiter limiter)
+    {
+      this.limiter = limiter;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event)
+    {
+      // also called after timeouts and errors
+      limiter.exit();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event)
+    {
+    }
+
+    @Override
+    public void onError(AsyncEvent event)
+    {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event)
+    {
+      // the listener is removed when the request is started again
+      event.getAsyncContext().addListener(this);
+    }
+
   }
 
   static class StaticBearerAuthenticationToken extends AbstractAuthenticationToken
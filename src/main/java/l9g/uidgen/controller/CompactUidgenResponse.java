@@ -0,0 +1,82 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Arrays;
+import l9g.uidgen.service.UidList;
+
+/**
+ * Response for {@code ?format=compact}, the tag and the number of digits are
+ * sent once and the UIDs as ascending, run-length and delta encoded numeric
+ * indices. {@code ranges} holds pairs of {@code gap, length}: each run starts
+ * {@code gap} after the end of the previous run (the first after 0) and
+ * covers {@code length} consecutive indices. The UIDs are
+ * {@code uniqueTag} followed by the index zero padded to
+ * {@code numberOfDigits} digits.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CompactUidgenResponse(String uniqueTag, int numberOfDigits,
+  long[] ranges, String status, long availableUids, int numberOfUids,
+  Long reservedUntil)
+{
+  public CompactUidgenResponse(UidList uids, String status, long availableUids)
+  {
+    this(uids.getFormatter().getUniqueTag(),
+      uids.getFormatter().getNumberOfDigits(), encode(uids), status,
+      availableUids, uids.size(), uids.getReservedUntil());
+  }
+
+  /**
+   * Sorts the indices and encodes them as {@code gap, length} pairs.
+   */
+  private static long[] encode(UidList uids)
+  {
+    int size = uids.size();
+    long[] indices = new long[size];
+
+    for(int i = 0; i < size; i++)
+    {
+      indices[i] = uids.getIndex(i);
+    }
+    Arrays.sort(indices);
+
+    long[] ranges = new long[2 * size];
+    int n = 0;
+    long end = 0;
+
+    for(int i = 0; i < size;)
+    {
+      long start = indices[i];
+      int length = 1;
+
+      while(i + length < size && indices[i + length] == start + length)
+      {
+        length++;
+      }
+
+      ranges[n++] = start - end;
+      ranges[n++] = length;
+      end = start + length;
+      i += length;
+    }
+
+    return (n == ranges.length) ? ranges : Arrays.copyOf(ranges, n);
+  }
+
+}
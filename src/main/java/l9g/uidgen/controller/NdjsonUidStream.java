@@ -0,0 +1,132 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import l9g.uidgen.service.UidFormatter;
+import l9g.uidgen.service.UidList;
+import l9g.uidgen.service.UidgenService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Streams newly allocated UIDs as newline delimited JSON, one
+ * {@code {"uid":"..."}} object per line followed by a final status line
+ * in the format of {@link UidgenResponse}. The UIDs are allocated and
+ * written in chunks, so memory does not grow with the number of requested
+ * UIDs and the first chunk is sent right away.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+class NdjsonUidStream implements StreamingResponseBody
+{
+  private final static int CHUNK_SIZE = 10000;
+
+  private final UidgenService uidgenService;
+
+  private final ObjectMapper objectMapper;
+
+  private final String poolName;
+
+  private final int numberOfRequestedUids;
+
+  private final String owner;
+
+  NdjsonUidStream(UidgenService uidgenService, ObjectMapper objectMapper,
+    String poolName, int numberOfRequestedUids, String owner)
+  {
+    this.uidgenService = uidgenService;
+    this.objectMapper = objectMapper;
+    this.poolName = poolName;
+    this.numberOfRequestedUids = numberOfRequestedUids;
+    this.owner = owner;
+  }
+
+  @Override
+  public void writeTo(OutputStream outputStream)
+    throws IOException
+  {
+    JsonGenerator generator = objectMapper.getFactory().createGenerator(
+      new BufferedOutputStream(outputStream, 64 * 1024));
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    generator.setRootValueSeparator(null);
+
+    int written = 0;
+    String status = "ok";
+
+    try
+    {
+      while(written < numberOfRequestedUids)
+      {
+        int chunkSize = Math.min(CHUNK_SIZE, numberOfRequestedUids - written);
+        UidList uids = uidgenService.findUids(poolName, chunkSize, owner);
+
+        writeUids(generator, uids);
+        written += uids.size();
+        // the chunk is complete, hand it to the client
+        generator.flush();
+
+        if(uids.size() < chunkSize)
+        {
+          break; // pool exhausted
+        }
+      }
+    }
+    catch(RuntimeException e)
+    {
+      // the response status has been sent already
+      log.error("pool={}, streaming UIDs failed after {} UIDs", poolName,
+        written, e);
+      status = "ERROR: " + e.getMessage();
+    }
+
+    log.info("pool={}, streamed {} of {} UIDs", poolName, written,
+      numberOfRequestedUids);
+
+    objectMapper.writeValue(generator, new UidgenResponse(null, status,
+      uidgenService.getAvailableUids(poolName), written));
+    generator.writeRaw('\n');
+    generator.close();
+  }
+
+  private static void writeUids(JsonGenerator generator, UidList uids)
+    throws IOException
+  {
+    UidFormatter formatter = uids.getFormatter();
+    char[] buffer = new char[formatter.length()];
+    Long reservedUntil = uids.getReservedUntil();
+
+    for(int i = 0; i < uids.size(); i++)
+    {
+      int length = formatter.format(uids.getIndex(i), buffer, 0);
+      generator.writeStartObject();
+      generator.writeFieldName("uid");
+      generator.writeString(buffer, 0, length);
+      if(reservedUntil != null)
+      {
+        generator.writeNumberField("reservedUntil", reservedUntil);
+      }
+      generator.writeEndObject();
+      generator.writeRaw('\n');
+    }
+  }
+
+}
@@ -15,6 +15,7 @@
  */
 package l9g.uidgen.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -23,15 +24,20 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import java.util.List;
 import l9g.uidgen.token.BearerTokenConfig;
 import l9g.uidgen.token.BearerTokenConfig.BearerToken;
+import l9g.uidgen.service.UidList;
+import l9g.uidgen.service.UidStatistics;
+import l9g.uidgen.service.UidgenConfig;
 import l9g.uidgen.service.UidgenService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import l9g.uidgen.token.AuthenticatedBearerToken;
 
 /**
@@ -45,12 +51,16 @@ import l9g.uidgen.token.AuthenticatedBearerToken;
 @Slf4j
 public class UidgenController
 {
+  private final static String FORMAT_COMPACT = "compact";
+
   private final UidgenService uidgenService;
 
   private final BearerTokenConfig tokenConfig;
 
+  private final ObjectMapper objectMapper;
+
   @Operation(summary = "Generate unique user IDs",
-             description = "Generate unique user IDs. Authentication is required via a Bearer Token in the Authorization header.",
+             description = "Generate unique user IDs. With format=compact the tag and digits are sent once and the UIDs as run-length and delta encoded indices, see CompactUidgenResponse. Authentication is required via a Bearer Token in the Authorization header.",
              security =
              @SecurityRequirement(name = "bearerAuth"),
              responses =
@@ -61,7 +71,8 @@ public class UidgenController
                                      schema =
                                      @Schema(oneOf =
                                      {
-                                       UidgenResponse.class
+                                       UidgenResponse.class,
+                                       CompactUidgenResponse.class
                                    }))),
                @ApiResponse(responseCode = "400", description = "Bad request, e.g., no parameter or multiple parameters provided, or invalid token",
                             content =
@@ -75,8 +86,9 @@ public class UidgenController
                                      @Schema(implementation = UidgenResponse.class))),
              })
   @GetMapping
-  public ResponseEntity<UidgenResponse> serveNewUids(
+  public ResponseEntity<?> serveNewUids(
     @RequestParam(name = "n", required = false, defaultValue = "1") int numberOfRequestedUids,
+    @RequestParam(name = "format", required = false) String format,
     @AuthenticatedBearerToken BearerToken token
   )
   {
@@ -84,13 +96,143 @@ public class UidgenController
     log.debug("token={}", token);
 
     log.info("numberOfRequestedUids={}", numberOfRequestedUids);
-    List<String> uids = uidgenService.findUids(numberOfRequestedUids);
+    checkFormat(format);
+    UidList uids =
+      uidgenService.findUids(numberOfRequestedUids, token.getOwner());
+
+    return respond(uids, format, uidgenService.getAvailableUids());
+  }
+
+  @Operation(summary = "Generate unique user IDs from a pool",
+             description = "Generate unique user IDs from the named pool. Supports format=compact like the default pool. Authentication is required via a Bearer Token in the Authorization header.",
+             security =
+             @SecurityRequirement(name = "bearerAuth"),
+             responses =
+             {
+               @ApiResponse(responseCode = "200", description = "UIDs successfully generated",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(oneOf =
+                                     {
+                                       UidgenResponse.class,
+                                       CompactUidgenResponse.class
+                                   }))),
+               @ApiResponse(responseCode = "404", description = "Unknown pool",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(implementation = UidgenResponse.class))),
+             })
+  @GetMapping(path = "/{pool}")
+  public ResponseEntity<?> serveNewPoolUids(
+    @PathVariable("pool") String poolName,
+    @RequestParam(name = "n", required = false, defaultValue = "1") int numberOfRequestedUids,
+    @RequestParam(name = "format", required = false) String format,
+    @AuthenticatedBearerToken BearerToken token
+  )
+  {
+    log.info("owner={}", token.getOwner());
+    log.debug("token={}", token);
+
+    log.info("pool={}, numberOfRequestedUids={}", poolName, numberOfRequestedUids);
+    checkFormat(format);
+    UidList uids = uidgenService.findUids(poolName, numberOfRequestedUids,
+      token.getOwner());
+
+    return respond(uids, format, uidgenService.getAvailableUids(poolName));
+  }
+
+  @Operation(summary = "Stream unique user IDs",
+             description = "Stream a large number of unique user IDs as newline delimited JSON, one {\"uid\":\"...\"} object per line followed by a status line. The UIDs are allocated and sent in chunks. Authentication is required via a Bearer Token in the Authorization header.",
+             security =
+             @SecurityRequirement(name = "bearerAuth"),
+             responses =
+             {
+               @ApiResponse(responseCode = "200", description = "UIDs are streamed, the last line holds the status",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)),
+             })
+  @GetMapping(path = "/bulk")
+  public ResponseEntity<StreamingResponseBody> serveBulkUids(
+    @RequestParam(name = "n", required = false, defaultValue = "1") int numberOfRequestedUids,
+    @AuthenticatedBearerToken BearerToken token
+  )
+  {
+    return servePoolBulkUids(
+      UidgenConfig.DEFAULT_POOL, numberOfRequestedUids, token);
+  }
 
+  @Operation(summary = "Stream unique user IDs from a pool",
+             description = "Stream a large number of unique user IDs of the named pool as newline delimited JSON. Authentication is required via a Bearer Token in the Authorization header.",
+             security =
+             @SecurityRequirement(name = "bearerAuth"),
+             responses =
+             {
+               @ApiResponse(responseCode = "200", description = "UIDs are streamed, the last line holds the status",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)),
+               @ApiResponse(responseCode = "404", description = "Unknown pool",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(implementation = UidgenResponse.class))),
+             })
+  @GetMapping(path = "/{pool}/bulk")
+  public ResponseEntity<StreamingResponseBody> servePoolBulkUids(
+    @PathVariable("pool") String poolName,
+    @RequestParam(name = "n", required = false, defaultValue = "1") int numberOfRequestedUids,
+    @AuthenticatedBearerToken BearerToken token
+  )
+  {
+    log.info("owner={}", token.getOwner());
+    log.debug("token={}", token);
+
+    log.info("pool={}, numberOfRequestedUids={}, streaming", poolName,
+      numberOfRequestedUids);
+    // an unknown pool is reported before the response is committed
+    uidgenService.getPool(poolName);
+
+    return ResponseEntity.ok()
+      .contentType(MediaType.APPLICATION_NDJSON)
+      .body(new NdjsonUidStream(
+        uidgenService, objectMapper, poolName, numberOfRequestedUids,
+        token.getOwner()));
+  }
+
+  @Operation(summary = "Get avalable unique user IDs of a pool",
+             description = "Get avalable unique user IDs of the named pool. Authentication is required via a Bearer Token in the Authorization header.",
+             security =
+             @SecurityRequirement(name = "bearerAuth"),
+             responses =
+             {
+               @ApiResponse(responseCode = "200", description = "Get avalable unique user IDs",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(oneOf =
+                                     {
+                                       UidgenResponse.class
+                                   }))),
+               @ApiResponse(responseCode = "404", description = "Unknown pool",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(implementation = UidgenResponse.class))),
+             })
+  @GetMapping(path = "/{pool}/status")
+  public ResponseEntity<UidgenResponse> servePoolAvailableUids(
+    @PathVariable("pool") String poolName,
+    @AuthenticatedBearerToken BearerToken token
+  )
+  {
+    log.info("owner={}", token.getOwner());
+    log.debug("token={}", token);
+
+    long availableUids = uidgenService.getAvailableUids(poolName);
+    log.info("pool={}, serveAvailableUids={}", poolName, availableUids);
     return ResponseEntity.ok(
-      new UidgenResponse(
-        uids, "ok", uidgenService.getAvailableUids(), uids.size()
-      )
-    );
+      new UidgenResponse(null, "ok", availableUids, 0));
   }
 
   @Operation(summary = "Get avalable unique user IDs",
@@ -121,6 +263,116 @@ public class UidgenController
       new UidgenResponse(null, "ok", uidgenService.getAvailableUids(), 0));
   }
 
+  @Operation(summary = "Get occupancy statistics",
+             description = "Get occupancy statistics: block fill histogram, longest free and taken runs, fragmentation and UIDs handed out per owner. The statistics are maintained on every allocation, reading them never waits for an allocation. Authentication is required via a Bearer Token in the Authorization header.",
+             security =
+             @SecurityRequirement(name = "bearerAuth"),
+             responses =
+             {
+               @ApiResponse(responseCode = "200", description = "Occupancy statistics",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(implementation = UidStatistics.class))),
+             })
+  @GetMapping(path = "/statistics")
+  public ResponseEntity<UidStatistics> serveStatistics(
+    @AuthenticatedBearerToken BearerToken token
+  )
+  {
+    return servePoolStatistics(UidgenConfig.DEFAULT_POOL, token);
+  }
+
+  @Operation(summary = "Get occupancy statistics of a pool",
+             description = "Get occupancy statistics of the named pool. Authentication is required via a Bearer Token in the Authorization header.",
+             security =
+             @SecurityRequirement(name = "bearerAuth"),
+             responses =
+             {
+               @ApiResponse(responseCode = "200", description = "Occupancy statistics",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(implementation = UidStatistics.class))),
+               @ApiResponse(responseCode = "404", description = "Unknown pool",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(implementation = UidgenResponse.class))),
+             })
+  @GetMapping(path = "/{pool}/statistics")
+  public ResponseEntity<UidStatistics> servePoolStatistics(
+    @PathVariable("pool") String poolName,
+    @AuthenticatedBearerToken BearerToken token
+  )
+  {
+    log.debug("owner={}, pool={}, statistics", token.getOwner(), poolName);
+    return ResponseEntity.ok(uidgenService.getStatistics(poolName));
+  }
+
+  @Operation(summary = "Confirm reserved unique user IDs",
+             description = "Confirm reserved unique user IDs once their LDAP entries exist. Unconfirmed reservations are returned to the pool when they expire. Authentication is required via a Bearer Token in the Authorization header.",
+             security =
+             @SecurityRequirement(name = "bearerAuth"),
+             responses =
+             {
+               @ApiResponse(responseCode = "200", description = "Confirmed UIDs, expired or unknown reservations are left out",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(oneOf =
+                                     {
+                                       UidgenResponse.class
+                                   }))),
+             })
+  @GetMapping(path = "/confirm")
+  public ResponseEntity<UidgenResponse> serveConfirmUids(
+    @RequestParam(name = "uid") List<String> uids,
+    @AuthenticatedBearerToken BearerToken token
+  )
+  {
+    return servePoolConfirmUids(UidgenConfig.DEFAULT_POOL, uids, token);
+  }
+
+  @Operation(summary = "Confirm reserved unique user IDs of a pool",
+             description = "Confirm reserved unique user IDs of the named pool once their LDAP entries exist. Authentication is required via a Bearer Token in the Authorization header.",
+             security =
+             @SecurityRequirement(name = "bearerAuth"),
+             responses =
+             {
+               @ApiResponse(responseCode = "200", description = "Confirmed UIDs, expired or unknown reservations are left out",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(oneOf =
+                                     {
+                                       UidgenResponse.class
+                                   }))),
+               @ApiResponse(responseCode = "404", description = "Unknown pool",
+                            content =
+                            @Content(mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                     schema =
+                                     @Schema(implementation = UidgenResponse.class))),
+             })
+  @GetMapping(path = "/{pool}/confirm")
+  public ResponseEntity<UidgenResponse> servePoolConfirmUids(
+    @PathVariable("pool") String poolName,
+    @RequestParam(name = "uid") List<String> uids,
+    @AuthenticatedBearerToken BearerToken token
+  )
+  {
+    log.info("owner={}", token.getOwner());
+    log.debug("token={}", token);
+
+    List<String> confirmed = uidgenService.confirmUids(poolName, uids);
+    log.info("pool={}, confirmed {} of {} UIDs", poolName, confirmed.size(),
+      uids.size());
+
+    return ResponseEntity.ok(
+      new UidgenResponse(confirmed, "ok",
+        uidgenService.getAvailableUids(poolName), confirmed.size()));
+  }
+
   @Operation(summary = "Initialize unique user id field from LDAP and show avalable unique user IDs",
              description = "Initialize unique user id field from LDAP and show avalable unique user IDs. Authentication is required via a Bearer Token in the Authorization header.",
              security =
@@ -145,4 +397,28 @@ public class UidgenController
     return serveAvailableUids(token);
   }
 
+  private static void checkFormat(String format)
+  {
+    if(format != null && !FORMAT_COMPACT.equals(format))
+    {
+      throw new UnsupportedFormatException(format);
+    }
+  }
+
+  private static ResponseEntity<?> respond(UidList uids, String format,
+    long availableUids)
+  {
+    if(FORMAT_COMPACT.equals(format))
+    {
+      return ResponseEntity.ok(
+        new CompactUidgenResponse(uids, "ok", availableUids));
+    }
+
+    return ResponseEntity.ok(
+      new UidgenResponse(
+        uids, "ok", availableUids, uids.size(), uids.getReservedUntil()
+      )
+    );
+  }
+
 }
@@ -23,7 +23,10 @@ import java.util.List;
  * @author Thorsten Ludewig (t.ludewig@gmail.com)
  */
 @JsonInclude(JsonInclude.Include.NON_NULL)
-public record UidgenResponse( List<String> uids, String status, int availableUids, int numberOfUids  )
+public record UidgenResponse( List<String> uids, String status, long availableUids, int numberOfUids, Long reservedUntil  )
 {
-  
+  public UidgenResponse(List<String> uids, String status, long availableUids, int numberOfUids)
+  {
+    this(uids, status, availableUids, numberOfUids, null);
+  }
 }
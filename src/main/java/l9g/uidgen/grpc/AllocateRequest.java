@@ -0,0 +1,61 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.grpc;
+
+import io.grpc.MethodDescriptor;
+import java.io.InputStream;
+
+/**
+ * {@code message AllocateRequest { string pool = 1; uint32 count = 2; }}
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public record AllocateRequest(String pool, int count)
+{
+  public static final MethodDescriptor.Marshaller<AllocateRequest> MARSHALLER =
+    new MethodDescriptor.Marshaller<>()
+  {
+    @Override
+    public InputStream stream(AllocateRequest request)
+    {
+      return new ProtoWriter(32)
+        .writeString(1, request.pool())
+        .writeUInt64(2, request.count())
+        .toInputStream();
+    }
+
+    @Override
+    public AllocateRequest parse(InputStream stream)
+    {
+      ProtoReader reader = new ProtoReader(stream);
+      String pool = "";
+      long count = 0;
+
+      for(int tag; (tag = reader.readTag()) != 0;)
+      {
+        switch(ProtoReader.fieldOf(tag))
+        {
+          case 1 -> pool = reader.readString();
+          case 2 -> count = reader.readVarint();
+          default -> reader.skip(ProtoReader.wireTypeOf(tag));
+        }
+      }
+
+      return new AllocateRequest(pool, (int)Math.min(count, Integer.MAX_VALUE));
+    }
+  };
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.grpc;
+
+import io.grpc.MethodDescriptor;
+import java.io.InputStream;
+
+/**
+ * <pre>
+ * message AllocateResponse {
+ *   repeated uint64 uid_indices = 1 [packed = true];
+ *   string unique_tag = 2;
+ *   uint32 number_of_digits = 3;
+ *   uint64 available_uids = 4;
+ *   int64 reserved_until = 5;
+ * }
+ * </pre>
+ *
+ * Only the numeric UID indices are sent, the caller prepends the unique
+ * tag and pads the index to the number of digits.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public record AllocateResponse(long[] uidIndices, int count, String uniqueTag,
+  int numberOfDigits, long availableUids, long reservedUntil)
+{
+  public static final MethodDescriptor.Marshaller<AllocateResponse> MARSHALLER =
+    new MethodDescriptor.Marshaller<>()
+  {
+    @Override
+    public InputStream stream(AllocateResponse response)
+    {
+      return new ProtoWriter(32 + response.count() * 5)
+        .writePackedUInt64(1, response.uidIndices(), response.count())
+        .writeString(2, response.uniqueTag())
+        .writeUInt64(3, response.numberOfDigits())
+        .writeUInt64(4, response.availableUids())
+        .writeUInt64(5, response.reservedUntil())
+        .toInputStream();
+    }
+
+    @Override
+    public AllocateResponse parse(InputStream stream)
+    {
+      ProtoReader reader = new ProtoReader(stream);
+      long[] uidIndices = new long[0];
+      int[] count = new int[1];
+      String uniqueTag = "";
+      long numberOfDigits = 0;
+      long availableUids = 0;
+      long reservedUntil = 0;
+
+      for(int tag; (tag = reader.readTag()) != 0;)
+      {
+        switch(ProtoReader.fieldOf(tag))
+        {
+          case 1 -> uidIndices = reader.readUInt64s(
+              ProtoReader.wireTypeOf(tag), uidIndices, count);
+          case 2 -> uniqueTag = reader.readString();
+          case 3 -> numberOfDigits = reader.readVarint();
+          case 4 -> availableUids = reader.readVarint();
+          case 5 -> reservedUntil = reader.readVarint();
+          default -> reader.skip(ProtoReader.wireTypeOf(tag));
+        }
+      }
+
+      return new AllocateResponse(uidIndices, count[0], uniqueTag,
+        (int)numberOfDigits, availableUids, reservedUntil);
+    }
+  };
+
+}
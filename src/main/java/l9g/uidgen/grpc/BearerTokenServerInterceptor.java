@@ -0,0 +1,143 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.grpc;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import java.util.concurrent.TimeUnit;
+import l9g.uidgen.token.BearerTokenRegistry;
+import l9g.uidgen.token.TokenRateLimiter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Same bearer token checks and limits as the HTTP endpoints, the token is
+ * expected in the {@code authorization} metadata.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+class BearerTokenServerInterceptor implements ServerInterceptor
+{
+  static final Context.Key<TokenRateLimiter> LIMITER =
+    Context.key("uidgen-token-limiter");
+
+  static final Context.Key<String> OWNER = Context.key("uidgen-token-owner");
+
+  private static final Metadata.Key<String> AUTHORIZATION =
+    Metadata.Key.of("authorization", Metadata.ASCII_STRING_MARSHALLER);
+
+  private static final Metadata.Key<String> RETRY_AFTER =
+    Metadata.Key.of("retry-after", Metadata.ASCII_STRING_MARSHALLER);
+
+  private final BearerTokenRegistry registry;
+
+  BearerTokenServerInterceptor(BearerTokenRegistry registry)
+  {
+    this.registry = registry;
+  }
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+    ServerCall<ReqT, RespT> call, Metadata headers,
+    ServerCallHandler<ReqT, RespT> next)
+  {
+    String auth = headers.get(AUTHORIZATION);
+    String name = (auth != null && auth.startsWith("Bearer "))
+      ? registry.authenticate(auth.substring("Bearer ".length()).trim())
+      : null;
+
+    if(name == null)
+    {
+      log.error("grpc: missing or invalid token");
+      call.close(Status.UNAUTHENTICATED.withDescription(
+        "Missing or invalid token"), new Metadata());
+      return new ServerCall.Listener<>()
+      {
+      };
+    }
+
+    String owner = registry.getToken(name).getOwner();
+    TokenRateLimiter limiter = registry.getLimiter(name);
+
+    // a call rejected for concurrency must not use up the rate budget
+    if( ! limiter.enter())
+    {
+      return reject(call, owner, "Too many concurrent requests", 1);
+    }
+
+    long wait = limiter.acquire();
+    if(wait > 0)
+    {
+      limiter.exit();
+      return reject(call, owner, "Rate limit exceeded",
+        Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999L)));
+    }
+
+    Context context = Context.current()
+      .withValue(LIMITER, limiter)
+      .withValue(OWNER, owner);
+
+    return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(
+      Contexts.interceptCall(context, call, headers, next))
+    {
+      @Override
+      public void onComplete()
+      {
+        try
+        {
+          super.onComplete();
+        }
+        finally
+        {
+          limiter.exit();
+        }
+      }
+
+      @Override
+      public void onCancel()
+      {
+        try
+        {
+          super.onCancel();
+        }
+        finally
+        {
+          limiter.exit();
+        }
+      }
+    };
+  }
+
+  private static <ReqT> ServerCall.Listener<ReqT> reject(
+    ServerCall<ReqT, ?> call, String owner, String reason,
+    long retryAfterSeconds)
+  {
+    log.warn("grpc: {} for principal: {}", reason, owner);
+    Metadata trailers = new Metadata();
+    trailers.put(RETRY_AFTER, Long.toString(retryAfterSeconds));
+    call.close(Status.RESOURCE_EXHAUSTED.withDescription(reason), trailers);
+    return new ServerCall.Listener<>()
+    {
+    };
+  }
+
+}
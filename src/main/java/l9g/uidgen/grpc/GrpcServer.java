@@ -0,0 +1,105 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.grpc;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import l9g.uidgen.service.UidgenService;
+import l9g.uidgen.token.BearerTokenRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Optional gRPC endpoint next to the REST API, started with
+ * {@code grpc.enabled}.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+@Component
+public class GrpcServer
+{
+  private final UidgenService uidgenService;
+
+  private final BearerTokenRegistry registry;
+
+  @Value("${grpc.enabled:false}")
+  private boolean enabled;
+
+  @Value("${grpc.port:9090}")
+  private int port;
+
+  @Value("${spring.threads.virtual.enabled:false}")
+  private boolean virtualThreads;
+
+  private Server server;
+
+  private ExecutorService executor;
+
+  public GrpcServer(UidgenService uidgenService, BearerTokenRegistry registry)
+  {
+    this.uidgenService = uidgenService;
+    this.registry = registry;
+  }
+
+  @PostConstruct
+  public void start() throws IOException
+  {
+    if( ! enabled)
+    {
+      return;
+    }
+
+    executor = virtualThreads
+      ? Executors.newVirtualThreadPerTaskExecutor()
+      : Executors.newCachedThreadPool();
+
+    server = ServerBuilder.forPort(port)
+      .executor(executor)
+      .addService(ServerInterceptors.intercept(
+        new UidgenGrpcService(uidgenService).bindService(),
+        new BearerTokenServerInterceptor(registry)))
+      .build()
+      .start();
+
+    log.info("grpc server started on port {}", port);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException
+  {
+    if(server != null)
+    {
+      server.shutdown();
+      if( ! server.awaitTermination(5, TimeUnit.SECONDS))
+      {
+        server.shutdownNow();
+      }
+      executor.shutdownNow();
+      server = null;
+      log.info("grpc server stopped");
+    }
+  }
+
+}
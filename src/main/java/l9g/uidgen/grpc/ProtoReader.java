@@ -0,0 +1,165 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.grpc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal protocol buffers decoder, counterpart of {@link ProtoWriter}.
+ * Unknown fields are skipped.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+final class ProtoReader
+{
+  private static final int FIXED64 = 1;
+
+  private static final int FIXED32 = 5;
+
+  private final byte[] buffer;
+
+  private int position;
+
+  private int limit;
+
+  ProtoReader(InputStream stream)
+  {
+    try
+    {
+      this.buffer = stream.readAllBytes();
+      this.limit = buffer.length;
+    }
+    catch(IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return the next field tag, 0 at the end of the message
+   */
+  int readTag()
+  {
+    return (position < limit) ? (int)readVarint() : 0;
+  }
+
+  static int fieldOf(int tag)
+  {
+    return tag >>> 3;
+  }
+
+  static int wireTypeOf(int tag)
+  {
+    return tag & 7;
+  }
+
+  long readVarint()
+  {
+    long value = 0;
+    for(int shift = 0; shift < 64; shift += 7)
+    {
+      if(position >= limit)
+      {
+        throw new IllegalArgumentException("truncated varint");
+      }
+      byte b = buffer[position++];
+      value |= (long)(b & 0x7f) << shift;
+      if((b & 0x80) == 0)
+      {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("malformed varint");
+  }
+
+  String readString()
+  {
+    int length = readLength();
+    String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+    position += length;
+    return value;
+  }
+
+  /**
+   * Reads a repeated varint field, packed or a single unpacked value, and
+   * appends it to {@code values}.
+   *
+   * @return the values array, grown if needed
+   */
+  long[] readUInt64s(int wireType, long[] values, int[] count)
+  {
+    if(wireType == ProtoWriter.LENGTH_DELIMITED)
+    {
+      int end = readLength() + position;
+      int outerLimit = limit;
+      limit = end;
+      while(position < end)
+      {
+        values = append(values, count, readVarint());
+      }
+      limit = outerLimit;
+      return values;
+    }
+    return append(values, count, readVarint());
+  }
+
+  void skip(int wireType)
+  {
+    switch(wireType)
+    {
+      case ProtoWriter.VARINT -> readVarint();
+      case FIXED64 -> advance(8);
+      case ProtoWriter.LENGTH_DELIMITED -> advance(readLength());
+      case FIXED32 -> advance(4);
+      default -> throw new IllegalArgumentException(
+          "unsupported wire type " + wireType);
+    }
+  }
+
+  private int readLength()
+  {
+    long length = readVarint();
+    if(length < 0 || length > limit - position)
+    {
+      throw new IllegalArgumentException("invalid length " + length);
+    }
+    return (int)length;
+  }
+
+  private void advance(int length)
+  {
+    if(length > limit - position)
+    {
+      throw new IllegalArgumentException("truncated field");
+    }
+    position += length;
+  }
+
+  private static long[] append(long[] values, int[] count, long value)
+  {
+    if(count[0] == values.length)
+    {
+      values = Arrays.copyOf(values, Math.max(16, values.length * 2));
+    }
+    values[count[0]++] = value;
+    return values;
+  }
+
+}
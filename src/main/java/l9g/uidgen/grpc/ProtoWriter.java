@@ -0,0 +1,133 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.grpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal protocol buffers encoder for the few message types of the gRPC
+ * endpoint, proto3 semantics: default values are not written.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+final class ProtoWriter
+{
+  static final int VARINT = 0;
+
+  static final int LENGTH_DELIMITED = 2;
+
+  private byte[] buffer;
+
+  private int position;
+
+  ProtoWriter(int initialCapacity)
+  {
+    this.buffer = new byte[Math.max(16, initialCapacity)];
+  }
+
+  ProtoWriter writeUInt64(int field, long value)
+  {
+    if(value != 0)
+    {
+      writeTag(field, VARINT);
+      writeVarint(value);
+    }
+    return this;
+  }
+
+  ProtoWriter writeString(int field, String value)
+  {
+    if(value != null && ! value.isEmpty())
+    {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeTag(field, LENGTH_DELIMITED);
+      writeVarint(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+    return this;
+  }
+
+  /**
+   * Writes the values as one packed repeated field, each value a varint.
+   */
+  ProtoWriter writePackedUInt64(int field, long[] values, int count)
+  {
+    if(count > 0)
+    {
+      int length = 0;
+      for(int i = 0; i < count; i++)
+      {
+        length += varintSize(values[i]);
+      }
+
+      writeTag(field, LENGTH_DELIMITED);
+      writeVarint(length);
+      ensureCapacity(length);
+      for(int i = 0; i < count; i++)
+      {
+        writeVarint(values[i]);
+      }
+    }
+    return this;
+  }
+
+  InputStream toInputStream()
+  {
+    return new ByteArrayInputStream(buffer, 0, position);
+  }
+
+  int size()
+  {
+    return position;
+  }
+
+  static int varintSize(long value)
+  {
+    // 7 payload bits per byte, at least one byte
+    return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+  }
+
+  private void writeTag(int field, int wireType)
+  {
+    writeVarint((field << 3) | wireType);
+  }
+
+  private void writeVarint(long value)
+  {
+    ensureCapacity(10);
+    while((value & ~0x7fL) != 0)
+    {
+      buffer[position++] = (byte)((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte)value;
+  }
+
+  private void ensureCapacity(int length)
+  {
+    if(position + length > buffer.length)
+    {
+      buffer = Arrays.copyOf(buffer,
+        Math.max(buffer.length * 2, position + length));
+    }
+  }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.grpc;
+
+import io.grpc.MethodDescriptor;
+import java.io.InputStream;
+
+/**
+ * {@code message StatusRequest { string pool = 1; }}
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public record StatusRequest(String pool)
+{
+  public static final MethodDescriptor.Marshaller<StatusRequest> MARSHALLER =
+    new MethodDescriptor.Marshaller<>()
+  {
+    @Override
+    public InputStream stream(StatusRequest request)
+    {
+      return new ProtoWriter(32)
+        .writeString(1, request.pool())
+        .toInputStream();
+    }
+
+    @Override
+    public StatusRequest parse(InputStream stream)
+    {
+      ProtoReader reader = new ProtoReader(stream);
+      String pool = "";
+
+      for(int tag; (tag = reader.readTag()) != 0;)
+      {
+        if(ProtoReader.fieldOf(tag) == 1)
+        {
+          pool = reader.readString();
+        }
+        else
+        {
+          reader.skip(ProtoReader.wireTypeOf(tag));
+        }
+      }
+
+      return new StatusRequest(pool);
+    }
+  };
+
+}
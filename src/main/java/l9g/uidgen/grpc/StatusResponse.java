@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.grpc;
+
+import io.grpc.MethodDescriptor;
+import java.io.InputStream;
+
+/**
+ * <pre>
+ * message StatusResponse {
+ *   string unique_tag = 1;
+ *   uint32 number_of_digits = 2;
+ *   uint64 available_uids = 3;
+ * }
+ * </pre>
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public record StatusResponse(String uniqueTag, int numberOfDigits,
+  long availableUids)
+{
+  public static final MethodDescriptor.Marshaller<StatusResponse> MARSHALLER =
+    new MethodDescriptor.Marshaller<>()
+  {
+    @Override
+    public InputStream stream(StatusResponse response)
+    {
+      return new ProtoWriter(32)
+        .writeString(1, response.uniqueTag())
+        .writeUInt64(2, response.numberOfDigits())
+        .writeUInt64(3, response.availableUids())
+        .toInputStream();
+    }
+
+    @Override
+    public StatusResponse parse(InputStream stream)
+    {
+      ProtoReader reader = new ProtoReader(stream);
+      String uniqueTag = "";
+      long numberOfDigits = 0;
+      long availableUids = 0;
+
+      for(int tag; (tag = reader.readTag()) != 0;)
+      {
+        switch(ProtoReader.fieldOf(tag))
+        {
+          case 1 -> uniqueTag = reader.readString();
+          case 2 -> numberOfDigits = reader.readVarint();
+          case 3 -> availableUids = reader.readVarint();
+          default -> reader.skip(ProtoReader.wireTypeOf(tag));
+        }
+      }
+
+      return new StatusResponse(uniqueTag, (int)numberOfDigits, availableUids);
+    }
+  };
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.grpc;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+import java.util.concurrent.atomic.AtomicBoolean;
+import l9g.uidgen.service.UidList;
+import l9g.uidgen.service.UidPool;
+import l9g.uidgen.service.UidVerificationException;
+import l9g.uidgen.service.UidgenConfig;
+import l9g.uidgen.service.UidgenService;
+import l9g.uidgen.service.UnknownPoolException;
+import l9g.uidgen.token.TokenRateLimiter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * gRPC counterpart of the allocation and status calls of the REST API, see
+ * {@code uidgen.proto}. The message marshallers are hand written, no code
+ * generation is involved.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+class UidgenGrpcService
+{
+  static final String SERVICE_NAME = "l9g.uidgen.v1.Uidgen";
+
+  private final static int CHUNK_SIZE = 10000;
+
+  static final MethodDescriptor<AllocateRequest, AllocateResponse> ALLOCATE =
+    MethodDescriptor.<AllocateRequest, AllocateResponse>newBuilder()
+      .setType(MethodDescriptor.MethodType.UNARY)
+      .setFullMethodName(
+        MethodDescriptor.generateFullMethodName(SERVICE_NAME, "Allocate"))
+      .setRequestMarshaller(AllocateRequest.MARSHALLER)
+      .setResponseMarshaller(AllocateResponse.MARSHALLER)
+      .build();
+
+  static final MethodDescriptor<AllocateRequest, AllocateResponse> ALLOCATE_STREAM =
+    MethodDescriptor.<AllocateRequest, AllocateResponse>newBuilder()
+      .setType(MethodDescriptor.MethodType.SERVER_STREAMING)
+      .setFullMethodName(
+        MethodDescriptor.generateFullMethodName(SERVICE_NAME, "AllocateStream"))
+      .setRequestMarshaller(AllocateRequest.MARSHALLER)
+      .setResponseMarshaller(AllocateResponse.MARSHALLER)
+      .build();
+
+  static final MethodDescriptor<StatusRequest, StatusResponse> STATUS =
+    MethodDescriptor.<StatusRequest, StatusResponse>newBuilder()
+      .setType(MethodDescriptor.MethodType.UNARY)
+      .setFullMethodName(
+        MethodDescriptor.generateFullMethodName(SERVICE_NAME, "Status"))
+      .setRequestMarshaller(StatusRequest.MARSHALLER)
+      .setResponseMarshaller(StatusResponse.MARSHALLER)
+      .build();
+
+  private final UidgenService uidgenService;
+
+  UidgenGrpcService(UidgenService uidgenService)
+  {
+    this.uidgenService = uidgenService;
+  }
+
+  ServerServiceDefinition bindService()
+  {
+    return ServerServiceDefinition.builder(SERVICE_NAME)
+      .addMethod(ALLOCATE, ServerCalls.asyncUnaryCall(this::allocate))
+      .addMethod(ALLOCATE_STREAM,
+        ServerCalls.asyncServerStreamingCall(this::allocateStream))
+      .addMethod(STATUS, ServerCalls.asyncUnaryCall(this::status))
+      .build();
+  }
+
+  void allocate(AllocateRequest request,
+    StreamObserver<AllocateResponse> observer)
+  {
+    try
+    {
+      UidPool pool = admit(request);
+      log.info("grpc: owner={}, pool={}, numberOfRequestedUids={}",
+        BearerTokenServerInterceptor.OWNER.get(), pool.getName(),
+        request.count());
+
+      observer.onNext(allocateChunk(pool, request.count(),
+        BearerTokenServerInterceptor.OWNER.get()));
+      observer.onCompleted();
+    }
+    catch(RuntimeException e)
+    {
+      observer.onError(toStatus(e));
+    }
+  }
+
+  /**
+   * Allocates and sends chunks only while the client keeps up, so the
+   * memory per call stays bounded by one chunk.
+   */
+  void allocateStream(AllocateRequest request,
+    StreamObserver<AllocateResponse> observer)
+  {
+    UidPool pool;
+    try
+    {
+      pool = admit(request);
+    }
+    catch(RuntimeException e)
+    {
+      observer.onError(toStatus(e));
+      return;
+    }
+
+    String owner = BearerTokenServerInterceptor.OWNER.get();
+    log.info("grpc: owner={}, pool={}, numberOfRequestedUids={}, streaming",
+      owner, pool.getName(), request.count());
+
+    ServerCallStreamObserver<AllocateResponse> call =
+      (ServerCallStreamObserver<AllocateResponse>)observer;
+    int[] written = new int[1];
+    // set by the cancel handler on another thread
+    AtomicBoolean done = new AtomicBoolean();
+
+    call.setOnCancelHandler(() -> done.set(true));
+    call.setOnReadyHandler(() ->
+    {
+      try
+      {
+        while( ! done.get() && ! call.isCancelled() && call.isReady())
+        {
+          int chunkSize = Math.min(CHUNK_SIZE, request.count() - written[0]);
+          AllocateResponse response =
+            allocateChunk(pool, chunkSize, owner);
+          if(response.count() > 0)
+          {
+            call.onNext(response);
+          }
+          written[0] += response.count();
+
+          if(written[0] >= request.count() || response.count() < chunkSize)
+          {
+            done.set(true);
+            log.info("grpc: pool={}, streamed {} of {} UIDs", pool.getName(),
+              written[0], request.count());
+            call.onCompleted();
+          }
+        }
+      }
+      catch(RuntimeException e)
+      {
+        done.set(true);
+        call.onError(toStatus(e));
+      }
+    });
+  }
+
+  void status(StatusRequest request, StreamObserver<StatusResponse> observer)
+  {
+    try
+    {
+      UidPool pool = uidgenService.getPool(poolName(request.pool()));
+      observer.onNext(new StatusResponse(pool.getUniqueTag(),
+        pool.getNumberOfDigits(), pool.getAvailableUids()));
+      observer.onCompleted();
+    }
+    catch(RuntimeException e)
+    {
+      observer.onError(toStatus(e));
+    }
+  }
+
+  private UidPool admit(AllocateRequest request)
+  {
+    TokenRateLimiter limiter = BearerTokenServerInterceptor.LIMITER.get();
+    if(request.count() < 0 || ! limiter.admitsUids(request.count()))
+    {
+      throw Status.INVALID_ARGUMENT
+        .withDescription("At most " + limiter.getMaxUids()
+          + " UIDs per request")
+        .asRuntimeException();
+    }
+    return uidgenService.getPool(poolName(request.pool()));
+  }
+
+  private AllocateResponse allocateChunk(UidPool pool, int count,
+    String owner)
+  {
+    UidList uids = pool.findUids(count, owner);
+
+    long[] uidIndices = new long[uids.size()];
+    for(int i = 0; i < uidIndices.length; i++)
+    {
+      uidIndices[i] = uids.getIndex(i);
+    }
+
+    Long reservedUntil = uids.getReservedUntil();
+    return new AllocateResponse(uidIndices, uidIndices.length,
+      pool.getUniqueTag(), pool.getNumberOfDigits(), pool.getAvailableUids(),
+      (reservedUntil != null) ? reservedUntil : 0);
+  }
+
+  private static String poolName(String pool)
+  {
+    return (pool == null || pool.isEmpty()) ? UidgenConfig.DEFAULT_POOL : pool;
+  }
+
+  private static Throwable toStatus(RuntimeException e)
+  {
+    Status status;
+
+    if(e instanceof StatusRuntimeException)
+    {
+      return e;
+    }
+    else if(e instanceof UnknownPoolException)
+    {
+      status = Status.NOT_FOUND;
+    }
+    else if(e instanceof UidVerificationException)
+    {
+      status = Status.UNAVAILABLE;
+    }
+    else
+    {
+      log.error("grpc: allocation failed", e);
+      status = Status.INTERNAL;
+    }
+
+    return status.withDescription("ERROR: " + e.getMessage())
+      .asRuntimeException();
+  }
+
+}
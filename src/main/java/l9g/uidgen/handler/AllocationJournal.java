@@ -0,0 +1,447 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.handler;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append only journal of all UIDs handed out to clients.
+ *
+ * A UID only becomes visible in LDAP when the client creates the entry. Until
+ * then the journal keeps it from being handed out again after a restart or
+ * a reinitialization. Records older than the retention time are dropped,
+ * their UIDs are expected to be found in LDAP by then.
+ *
+ * Concurrent appends are group committed: the first caller writes and
+ * forces all records queued so far, the others wait for that single
+ * {@code fsync}. A failed write is truncated away, since replay stops at
+ * the first torn record; if that fails too, the journal refuses all
+ * further appends until the next compaction.
+ *
+ * Record layout (little endian):
+ *
+ * <pre>
+ * length        int   (payload bytes)
+ * created at    long  \
+ * pool name     short + UTF-8 bytes
+ * count         int   | payload
+ * UID indices   long * count  /
+ * CRC32C        int   (payload)
+ * </pre>
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+@Component
+public class AllocationJournal
+{
+  @Getter
+  @Value("${uidgen.journal.enabled:true}")
+  private boolean enabled;
+
+  @Value("${uidgen.journal.file:data/allocation.journal}")
+  private String journalFile;
+
+  @Value("${uidgen.journal.retention:86400000}")
+  private long retention;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition synced = lock.newCondition();
+
+  private Batch currentBatch = new Batch();
+
+  private boolean syncing;
+
+  private FileChannel channel;
+
+  /**
+   * A failed write could not be truncated away, cleared by
+   * {@link #compact()}.
+   */
+  private volatile boolean failed;
+
+  @PostConstruct
+  public void open() throws IOException
+  {
+    if(enabled)
+    {
+      compact();
+    }
+  }
+
+  @PreDestroy
+  public void close()
+  {
+    lock.lock();
+    try
+    {
+      awaitSync();
+      if(channel != null)
+      {
+        channel.close();
+        channel = null;
+      }
+    }
+    catch(IOException e)
+    {
+      log.warn("closing journal failed: {}", e.getMessage());
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Appends the allocated UID indices and returns once they are on disk.
+   */
+  public void append(String poolName, long[] uidIndices, int count)
+    throws IOException
+  {
+    if( ! enabled || count == 0)
+    {
+      return;
+    }
+
+    ByteBuffer record = encode(poolName, uidIndices, count);
+
+    lock.lock();
+    try
+    {
+      Batch batch = currentBatch;
+      batch.records.add(record);
+
+      while( ! batch.done)
+      {
+        if(syncing)
+        {
+          synced.awaitUninterruptibly();
+        }
+        else
+        {
+          // this caller becomes the leader and syncs all queued records
+          syncing = true;
+          Batch writing = currentBatch;
+          currentBatch = new Batch();
+          lock.unlock();
+          try
+          {
+            write(writing.records);
+          }
+          catch(IOException e)
+          {
+            writing.failure = e;
+          }
+          finally
+          {
+            lock.lock();
+            syncing = false;
+            writing.done = true;
+            synced.signalAll();
+          }
+        }
+      }
+
+      if(batch.failure != null)
+      {
+        throw batch.failure;
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Calls the consumer with every record younger than the retention time.
+   */
+  public void replay(Consumer<Record> consumer) throws IOException
+  {
+    if( ! enabled)
+    {
+      return;
+    }
+
+    lock.lock();
+    try
+    {
+      awaitSync();
+      int records = 0;
+      for(Record record : readRecords())
+      {
+        consumer.accept(record);
+        records++;
+      }
+      log.info("journal replayed: {} records", records);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Rewrites the journal without expired records and a torn tail.
+   */
+  public void compact() throws IOException
+  {
+    if( ! enabled)
+    {
+      return;
+    }
+
+    lock.lock();
+    try
+    {
+      awaitSync();
+
+      Path path = Path.of(journalFile);
+      Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+      List<Record> records = readRecords();
+
+      if(path.getParent() != null)
+      {
+        Files.createDirectories(path.getParent());
+      }
+
+      if(channel != null)
+      {
+        channel.close();
+        channel = null;
+      }
+
+      Files.deleteIfExists(tmpPath);
+      try(FileChannel tmpChannel = FileChannel.open(tmpPath,
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+      {
+        for(Record record : records)
+        {
+          ByteBuffer buffer = encode(record.poolName(), record.uidIndices(),
+            record.uidIndices().length, record.createdAt());
+          while(buffer.hasRemaining())
+          {
+            tmpChannel.write(buffer);
+          }
+        }
+        tmpChannel.force(true);
+      }
+
+      Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+
+      channel = FileChannel.open(path,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+      // the torn record was the last one and has been left out
+      failed = false;
+
+      log.debug("journal compacted: {} records", records.size());
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private void awaitSync()
+  {
+    while(syncing)
+    {
+      synced.awaitUninterruptibly();
+    }
+  }
+
+  private void write(List<ByteBuffer> records) throws IOException
+  {
+    if(channel == null)
+    {
+      throw new IOException("journal is not open");
+    }
+
+    if(failed)
+    {
+      throw new IOException("journal is failed, a torn record remains");
+    }
+
+    ByteBuffer[] buffers = records.toArray(ByteBuffer[] :: new);
+    long remaining = 0;
+    for(ByteBuffer buffer : buffers)
+    {
+      remaining += buffer.remaining();
+    }
+
+    long goodSize = channel.size();
+    try
+    {
+      while(remaining > 0)
+      {
+        remaining -= channel.write(buffers);
+      }
+      channel.force(false);
+    }
+    catch(IOException e)
+    {
+      truncate(goodSize, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Removes a partially written batch, otherwise replay would drop all
+   * records appended after it.
+   */
+  private void truncate(long goodSize, IOException cause)
+  {
+    try
+    {
+      channel.truncate(goodSize);
+      channel.force(false);
+      log.warn("journal: write failed, truncated to {} bytes", goodSize);
+    }
+    catch(IOException e)
+    {
+      cause.addSuppressed(e);
+      failed = true;
+      log.error("journal: write failed and truncating failed, "
+        + "refusing further appends", e);
+    }
+  }
+
+  private List<Record> readRecords() throws IOException
+  {
+    List<Record> records = new ArrayList<>();
+    Path path = Path.of(journalFile);
+
+    if( ! Files.isRegularFile(path))
+    {
+      return records;
+    }
+
+    long expiredBefore = System.currentTimeMillis() - retention;
+    ByteBuffer buffer =
+      ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+
+    while(buffer.remaining() >= Integer.BYTES)
+    {
+      int length = buffer.getInt();
+
+      if(length < Long.BYTES + Short.BYTES + Integer.BYTES
+        || buffer.remaining() < length + Integer.BYTES)
+      {
+        log.warn("journal: ignoring torn record at {}", buffer.position() - 4);
+        break;
+      }
+
+      ByteBuffer payload =
+        buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.position(buffer.position() + length);
+
+      if(checksum(payload) != buffer.getInt())
+      {
+        log.warn("journal: ignoring record with checksum mismatch at {}",
+          buffer.position() - length - 8);
+        break;
+      }
+
+      long createdAt = payload.getLong();
+      byte[] name = new byte[payload.getShort()];
+      payload.get(name);
+      long[] uidIndices = new long[payload.getInt()];
+      payload.asLongBuffer().get(uidIndices);
+
+      if(createdAt >= expiredBefore)
+      {
+        records.add(new Record(new String(name, StandardCharsets.UTF_8),
+          uidIndices, createdAt));
+      }
+    }
+
+    return records;
+  }
+
+  private static ByteBuffer encode(String poolName, long[] uidIndices, int count)
+  {
+    return encode(poolName, uidIndices, count, System.currentTimeMillis());
+  }
+
+  private static ByteBuffer encode(String poolName, long[] uidIndices,
+    int count, long createdAt)
+  {
+    byte[] name = poolName.getBytes(StandardCharsets.UTF_8);
+    int length = Long.BYTES + Short.BYTES + name.length + Integer.BYTES
+      + count * Long.BYTES;
+
+    ByteBuffer buffer = ByteBuffer.allocate(length + 2 * Integer.BYTES)
+      .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(length);
+    buffer.putLong(createdAt);
+    buffer.putShort((short)name.length);
+    buffer.put(name);
+    buffer.putInt(count);
+    for(int i = 0; i < count; i++)
+    {
+      buffer.putLong(uidIndices[i]);
+    }
+    buffer.putInt(checksum(buffer.slice(Integer.BYTES, length)));
+    return buffer.flip();
+  }
+
+  private static int checksum(ByteBuffer buffer)
+  {
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.duplicate());
+    return (int)crc.getValue();
+  }
+
+  private static final class Batch
+  {
+    private final List<ByteBuffer> records = new ArrayList<>();
+
+    private boolean done;
+
+    private IOException failure;
+  }
+
+  /**
+   * @param createdAt epoch milliseconds the UIDs were handed out
+   */
+  public record Record(String poolName, long[] uidIndices, long createdAt)
+  {
+  }
+
+}
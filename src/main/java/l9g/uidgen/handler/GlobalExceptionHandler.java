@@ -16,8 +16,14 @@
 package l9g.uidgen.handler;
 
 import l9g.uidgen.controller.UidgenResponse;
+import l9g.uidgen.controller.UnsupportedFormatException;
+import l9g.uidgen.service.UidVerificationException;
+import l9g.uidgen.service.UnknownPoolException;
 import l9g.uidgen.token.MissingOrInvalidTokenException;
+import l9g.uidgen.token.TooManyRequestsException;
+import l9g.uidgen.token.TooManyUidsException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.AuthenticationException;
@@ -42,6 +48,53 @@ public class GlobalExceptionHandler
       .body(new UidgenResponse(null, "ERROR: " + ex.getMessage(), 0, 0));
   }
   
+  @ExceptionHandler(TooManyRequestsException.class)
+  public ResponseEntity<UidgenResponse> handleTooManyRequests(
+    TooManyRequestsException ex)
+  {
+    log.warn("{}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+      .header(HttpHeaders.RETRY_AFTER,
+        Long.toString(ex.getRetryAfterSeconds()))
+      .body(new UidgenResponse(null, "ERROR: " + ex.getMessage(), 0, 0));
+  }
+
+  @ExceptionHandler(TooManyUidsException.class)
+  public ResponseEntity<UidgenResponse> handleTooManyUids(
+    TooManyUidsException ex)
+  {
+    log.warn("{}", ex.getMessage());
+    return ResponseEntity.badRequest()
+      .body(new UidgenResponse(null, "ERROR: " + ex.getMessage(), 0, 0));
+  }
+
+  @ExceptionHandler(UnsupportedFormatException.class)
+  public ResponseEntity<UidgenResponse> handleUnsupportedFormat(
+    UnsupportedFormatException ex)
+  {
+    log.warn("{}", ex.getMessage());
+    return ResponseEntity.badRequest()
+      .body(new UidgenResponse(null, "ERROR: " + ex.getMessage(), 0, 0));
+  }
+
+  @ExceptionHandler(UnknownPoolException.class)
+  public ResponseEntity<UidgenResponse> handleUnknownPool(
+    UnknownPoolException ex)
+  {
+    log.error("{}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.NOT_FOUND)
+      .body(new UidgenResponse(null, "ERROR: " + ex.getMessage(), 0, 0));
+  }
+
+  @ExceptionHandler(UidVerificationException.class)
+  public ResponseEntity<UidgenResponse> handleUidVerification(
+    UidVerificationException ex)
+  {
+    log.error("{}", ex.getMessage(), ex.getCause());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+      .body(new UidgenResponse(null, "ERROR: " + ex.getMessage(), 0, 0));
+  }
+
   @ExceptionHandler(AuthenticationException.class)
   public ResponseEntity<UidgenResponse> handleAuthenticationException(AuthenticationException ex)
   {
@@ -17,21 +17,60 @@ package l9g.uidgen.handler;
 
 import com.unboundid.asn1.ASN1GeneralizedTime;
 import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
 import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.GetEntryLDAPConnectionPoolHealthCheck;
 import com.unboundid.ldap.sdk.LDAPConnectionOptions;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPResult;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
 import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.ServerSet;
+import com.unboundid.ldap.sdk.SimpleBindRequest;
+import com.unboundid.ldap.sdk.SingleServerSet;
+import com.unboundid.ldap.sdk.controls.AssertionRequestControl;
+import com.unboundid.ldap.sdk.controls.PersistentSearchChangeType;
+import com.unboundid.ldap.sdk.controls.PersistentSearchRequestControl;
 import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
 import com.unboundid.util.ssl.SSLUtil;
 import com.unboundid.util.ssl.TrustAllTrustManager;
+import jakarta.annotation.PreDestroy;
 import java.security.GeneralSecurityException;
 import java.text.MessageFormat;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import javax.net.ssl.SSLSocketFactory;
 import l9g.uidgen.crypto.EncryptedValue;
+import l9g.uidgen.service.UidgenConfig;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -50,6 +89,16 @@ public class LdapHandler
   private final static Logger LOGGER =
     LoggerFactory.getLogger(LdapHandler.class);
 
+  private final static String MODIFY_TIMESTAMP = "modifyTimestamp";
+
+  private final static String CREATE_TIMESTAMP = "createTimestamp";
+
+  private final static long MAX_RECONNECT_DELAY = 60000;
+
+  private final static long HEALTH_CHECK_MAX_RESPONSE_TIME = 5000;
+
+  private final static int EXACT_PARTITION_SIZE = 100;
+
   @Value("${ldap.host.name}")
   private String ldapHostname;
 
@@ -78,12 +127,116 @@ public class LdapHandler
   @Value("${ldap.user.id}")
   private String ldapUserId;
 
-  @Value("${ldap.user.attributes}")
-  private String[] ldapUserAttributeNames;
+  @Getter
+  @Value("${ldap.persistent-search.enabled:false}")
+  private boolean persistentSearchEnabled;
+
+  @Value("${ldap.persistent-search.reconnect-delay:1000}")
+  private long persistentSearchReconnectDelay;
+
+  private final UidgenConfig uidgenConfig;
+
+  private volatile boolean persistentSearchRunning;
+
+  private volatile LDAPConnection persistentSearchConnection;
+
+  private Thread persistentSearchThread;
+
+  @Value("${ldap.partition.depth:0}")
+  private int partitionDepth;
+
+  @Value("${ldap.partition.parallelism:4}")
+  private int partitionParallelism;
+
+  @Value("${ldap.pool.size:4}")
+  private int poolSize;
+
+  @Value("${ldap.pool.max-connection-age:900000}")
+  private long poolMaxConnectionAge;
+
+  @Value("${ldap.pool.health-check-interval:60000}")
+  private long poolHealthCheckInterval;
+
+  @Value("${spring.threads.virtual.enabled:false}")
+  private boolean virtualThreads;
+
+  /**
+   * Guards the lazily created pool and socket factory, a monitor would pin
+   * a virtual thread to its carrier while connecting.
+   */
+  private final ReentrantLock connectionLock = new ReentrantLock();
+
+  private LDAPConnectionPool connectionPool;
+
+  private SSLSocketFactory sslSocketFactory;
 
-  @Value("${uidgen.unique-tag}")
-  private String uniqueTag;
+  /**
+   * @return the shared connection pool, created on first use
+   */
+  private LDAPConnectionPool getConnectionPool()
+    throws Exception
+  {
+    connectionLock.lock();
+    try
+    {
+      if(connectionPool == null)
+      {
+        LOGGER.debug("host={}", ldapHostname);
+        LOGGER.debug("port={}", ldapPort);
+        LOGGER.debug("ssl={}", ldapSslEnabled);
+        LOGGER.debug("bind dn={}", ldapBindDn);
+        LOGGER.debug("pool size={}, max connection age={}, health check interval={}",
+          poolSize, poolMaxConnectionAge, poolHealthCheckInterval);
+
+        ServerSet serverSet = ldapSslEnabled
+          ? new SingleServerSet(ldapHostname, ldapPort, getSSLSocketFactory(),
+            new LDAPConnectionOptions())
+          : new SingleServerSet(ldapHostname, ldapPort,
+            new LDAPConnectionOptions());
+
+        LDAPConnectionPool pool = new LDAPConnectionPool(serverSet,
+          new SimpleBindRequest(ldapBindDn, ldapBindPassword),
+          1, Math.max(1, poolSize));
+        pool.setConnectionPoolName(ldapHostname);
+        pool.setMaxConnectionAgeMillis(poolMaxConnectionAge);
+        pool.setRetryFailedOperationsDueToInvalidConnections(true);
+        pool.setHealthCheck(new GetEntryLDAPConnectionPoolHealthCheck(
+          "", HEALTH_CHECK_MAX_RESPONSE_TIME,
+          true, false, false, false, true, true));
+        pool.setHealthCheckIntervalMillis(poolHealthCheckInterval);
+        connectionPool = pool;
+      }
+
+      return connectionPool;
+    }
+    finally
+    {
+      connectionLock.unlock();
+    }
+  }
 
+  @PreDestroy
+  public void closeConnectionPool()
+  {
+    connectionLock.lock();
+    try
+    {
+      if(connectionPool != null)
+      {
+        connectionPool.close();
+        connectionPool = null;
+      }
+    }
+    finally
+    {
+      connectionLock.unlock();
+    }
+  }
+
+  /**
+   * Dedicated connection for the persistent search, which would otherwise
+   * hold a pooled connection forever.
+   */
   private LDAPConnection getConnection()
     throws Exception
   {
@@ -98,7 +251,7 @@ public class LdapHandler
     LDAPConnectionOptions options = new LDAPConnectionOptions();
     if(ldapSslEnabled)
     {
-      ldapConnection = new LDAPConnection(createSSLSocketFactory(), options,
+      ldapConnection = new LDAPConnection(getSSLSocketFactory(), options,
         ldapHostname, ldapPort,
         ldapBindDn,
         ldapBindPassword);
@@ -114,54 +267,261 @@ public class LdapHandler
     return ldapConnection;
   }
 
-  private SSLSocketFactory createSSLSocketFactory()
+  private SSLSocketFactory getSSLSocketFactory()
     throws
     GeneralSecurityException
   {
-    SSLUtil sslUtil = new SSLUtil(new TrustAllTrustManager());
-    return sslUtil.createSSLSocketFactory();
+    connectionLock.lock();
+    try
+    {
+      if(sslSocketFactory == null)
+      {
+        SSLUtil sslUtil = new SSLUtil(new TrustAllTrustManager());
+        sslSocketFactory = sslUtil.createSSLSocketFactory();
+      }
+      return sslSocketFactory;
+    }
+    finally
+    {
+      connectionLock.unlock();
+    }
   }
 
-  private void printLdapEntriesMap()
+  /**
+   * With {@code spring.threads.virtual.enabled} background LDAP work runs
+   * on virtual threads, which release their carrier while waiting for the
+   * directory.
+   */
+  private Thread.Builder threadBuilder()
   {
-    ldapEntryMap.forEach((k, v) ->
-    {
-      System.out.println(k + " = " + v);
-    });
-    
-    System.out.println( ldapEntryMap.size() + " entries");
+    return virtualThreads
+      ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true);
   }
 
-  public void readLdapEntries(
-    ASN1GeneralizedTime lastSyncTimestamp, boolean withAttributes)
+  /**
+   * Streams the UIDs of all entries created or modified since
+   * {@code lastSyncTimestamp} to the consumer as they arrive, no entry is
+   * kept.
+   *
+   * A full scan ({@code lastSyncTimestamp} 0) is split into partitions by
+   * UID prefix if {@code ldap.partition.depth} is set, e.g. depth 1 searches
+   * {@code (uid=unitag0*)} to {@code (uid=unitag9*)}. UIDs with fewer digits
+   * than the depth are searched by exact value, e.g. depth 2 adds
+   * {@code (|(uid=unitag0)...(uid=unitag9))}. The partitions are
+   * searched concurrently over separate pooled connections, the consumer
+   * is never called concurrently.
+   *
+   * @return highest create or modify timestamp of all entries read, or
+   *         {@code lastSyncTimestamp} if no entry was found
+   */
+  public ASN1GeneralizedTime readLdapUids(
+    ASN1GeneralizedTime lastSyncTimestamp, Consumer<String> uidConsumer)
     throws Throwable
   {
-    ldapEntryMap.clear();
+    String[] attributeNames = new String[]
+    {
+      ldapUserId
+    };
 
-    String filter = new MessageFormat(
-      ldapFilter).format(new Object[]
+    List<Filter> partitions = partitionFilters();
+
+    if(lastSyncTimestamp.getTime() > 0 || partitions.isEmpty())
     {
-      lastSyncTimestamp.toString()
-    });
+      return searchLdapEntries(lastSyncTimestamp, null, attributeNames,
+        (uid, entry) -> uidConsumer.accept(uid));
+    }
 
-    LOGGER.debug("filter={}", filter);
+    LOGGER.info("full scan in {} partitions, parallelism {}",
+      partitions.size(), partitionParallelism);
 
-    try(LDAPConnection connection = getConnection())
+    ReentrantLock consumerLock = new ReentrantLock();
+    int[] loadedEntries = new int[1];
+    BiConsumer<String, SearchResultEntry> entryConsumer = (uid, entry) ->
     {
-      SearchRequest searchRequest;
+      consumerLock.lock();
+      try
+      {
+        loadedEntries[0]++;
+        uidConsumer.accept(uid);
+      }
+      finally
+      {
+        consumerLock.unlock();
+      }
+    };
 
-      if(withAttributes)
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max(1, partitionParallelism),
+      threadBuilder().name("ldap-partition-", 0).factory());
+    try
+    {
+      List<Future<ASN1GeneralizedTime>> results = new ArrayList<>();
+      for(Filter partition : partitions)
       {
-        searchRequest = new SearchRequest(
-          ldapBaseDn, SearchScope.SUB, filter,
-          ldapUserAttributeNames);
+        results.add(executor.submit(() ->
+        {
+          try
+          {
+            return searchLdapEntries(lastSyncTimestamp, partition,
+              attributeNames, entryConsumer);
+          }
+          catch(Exception | Error e)
+          {
+            throw e;
+          }
+          catch(Throwable t)
+          {
+            throw new IllegalStateException(t);
+          }
+        }));
       }
-      else
+
+      long highWaterTimestamp = 0;
+      for(Future<ASN1GeneralizedTime> result : results)
+      {
+        try
+        {
+          highWaterTimestamp =
+            Math.max(highWaterTimestamp, result.get().getTime());
+        }
+        catch(ExecutionException e)
+        {
+          throw e.getCause();
+        }
+      }
+
+      consumerLock.lock();
+      try
+      {
+        LOGGER.info("loaded {} ldap entries", loadedEntries[0]);
+      }
+      finally
+      {
+        consumerLock.unlock();
+      }
+
+      return new ASN1GeneralizedTime(highWaterTimestamp);
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * @return search filters of all partitions, empty if partitioning is off;
+   *         one substring filter per UID prefix of {@code depth} digits,
+   *         prefixes covered by a shorter prefix (nested unique tags) are
+   *         left out, followed by OR filters of at most
+   *         {@value #EXACT_PARTITION_SIZE} UIDs with fewer digits, which no
+   *         prefix matches
+   */
+  private List<Filter> partitionFilters()
+  {
+    TreeSet<String> prefixes = new TreeSet<>();
+    TreeSet<String> shortUids = new TreeSet<>();
+
+    if(partitionDepth > 0)
+    {
+      for(UidgenConfig.Pool pool : uidgenConfig.getAllPools().values())
+      {
+        String tag = pool.getUniqueTag().toLowerCase();
+        int depth = Math.min(partitionDepth, pool.getNumberOfDigits());
+        for(int digits = 1; digits <= depth; digits++)
+        {
+          int partitions = (int)Math.pow(10, digits);
+          for(int i = 0; i < partitions; i++)
+          {
+            String value = tag + String.format("%0" + digits + "d", i);
+            (digits == depth ? prefixes : shortUids).add(value);
+          }
+        }
+      }
+    }
+
+    List<String> partitionPrefixes = new ArrayList<>();
+    for(String prefix : prefixes)
+    {
+      // sorted, so a covering prefix always comes first
+      if(partitionPrefixes.isEmpty() || ! prefix.startsWith(
+        partitionPrefixes.get(partitionPrefixes.size() - 1)))
+      {
+        partitionPrefixes.add(prefix);
+      }
+    }
+
+    List<Filter> partitions = new ArrayList<>();
+    for(String prefix : partitionPrefixes)
+    {
+      partitions.add(
+        Filter.createSubstringFilter(ldapUserId, prefix, null, null));
+    }
+
+    List<Filter> exactUids = new ArrayList<>();
+    for(String uid : shortUids)
+    {
+      // a UID of a nested unique tag may already be matched by a prefix
+      if(partitionPrefixes.stream().noneMatch(uid::startsWith))
       {
-        searchRequest = new SearchRequest(
-          ldapBaseDn, SearchScope.SUB, filter,
-          ldapUserId);
+        exactUids.add(Filter.createEqualityFilter(ldapUserId, uid));
       }
+    }
+
+    for(int i = 0; i < exactUids.size(); i += EXACT_PARTITION_SIZE)
+    {
+      partitions.add(Filter.createORFilter(exactUids.subList(i,
+        Math.min(exactUids.size(), i + EXACT_PARTITION_SIZE))));
+    }
+
+    return partitions;
+  }
+
+  /**
+   * Paged search handing every entry with a UID of one of the pools to the
+   * consumer from within the search result listener. If
+   * {@code ldap.filter} has no {@code {0}} placeholder, the timestamp
+   * condition is added to it, unless the timestamp is 0 (full scan).
+   */
+  private ASN1GeneralizedTime searchLdapEntries(
+    ASN1GeneralizedTime lastSyncTimestamp, Filter partition,
+    String[] attributeNames,
+    BiConsumer<String, SearchResultEntry> entryConsumer)
+    throws Throwable
+  {
+    String filter = new MessageFormat(
+      ldapFilter).format(new Object[]
+    {
+      lastSyncTimestamp.toString()
+    });
+
+    if( ! ldapFilter.contains("{0}") && lastSyncTimestamp.getTime() > 0)
+    {
+      filter = Filter.createANDFilter(Filter.create(filter),
+        Filter.createORFilter(
+          Filter.createGreaterOrEqualFilter(
+            MODIFY_TIMESTAMP, lastSyncTimestamp.toString()),
+          Filter.createGreaterOrEqualFilter(
+            CREATE_TIMESTAMP, lastSyncTimestamp.toString()))).toString();
+    }
+
+    if(partition != null)
+    {
+      filter = Filter.createANDFilter(Filter.create(filter), partition)
+        .toString();
+    }
+
+    LOGGER.debug("filter={}", filter);
+
+    StreamingSearchListener listener = new StreamingSearchListener(
+      uidPattern(), lastSyncTimestamp.getTime(), entryConsumer);
+
+    // paged results need the same connection for all pages
+    LDAPConnectionPool pool = getConnectionPool();
+    LDAPConnection connection = pool.getConnection();
+    try
+    {
+      SearchRequest searchRequest = new SearchRequest(listener,
+        ldapBaseDn, SearchScope.SUB, filter, withTimestamps(attributeNames));
 
       int totalSourceEntries = 0;
       ASN1OctetString resumeCookie = null;
@@ -181,67 +541,462 @@ public class LdapHandler
         int sourceEntries = sourceSearchResult.getEntryCount();
         totalSourceEntries += sourceEntries;
 
-        if(sourceEntries > 0)
-        {
-          String regex = "^" + uniqueTag + "\\d+$";
-          Pattern pattern = Pattern.compile(regex);
-
-          for(Entry entry : sourceSearchResult.getSearchEntries())
-          {
-            String uid = entry.getAttributeValue(ldapUserId).trim().toLowerCase();
-            if(pattern.matcher(uid).matches())
-            {
-              ldapEntryMap.put(uid, entry);
-            }
-          }
-
-          responseControl = SimplePagedResultsControl.get(sourceSearchResult);
+        responseControl = SimplePagedResultsControl.get(sourceSearchResult);
 
-          if(responseControl != null)
-          {
-            resumeCookie = responseControl.getCookie();
-          }
+        if(responseControl != null)
+        {
+          resumeCookie = responseControl.getCookie();
         }
       }
       while(responseControl != null && responseControl.moreResultsToReturn());
 
-      if(totalSourceEntries == 0)
+      if(partition != null)
+      {
+        LOGGER.debug("{}: found {}, loaded {} ldap entries", partition,
+          totalSourceEntries, listener.matchingEntries);
+      }
+      else if(totalSourceEntries == 0)
       {
         LOGGER.info("no ldap entries found");
       }
       else
       {
         LOGGER.info("found {} ldap entries", totalSourceEntries);
-        LOGGER.info("loaded {} ldap entries", ldapEntryMap.size());
+        LOGGER.info("loaded {} ldap entries", listener.matchingEntries);
       }
+
+      pool.releaseConnection(connection);
+    }
+    catch(LDAPException e)
+    {
+      pool.releaseConnectionAfterException(connection, e);
+      throw e;
     }
+    catch(Throwable t)
+    {
+      pool.releaseDefunctConnection(connection);
+      throw t;
+    }
+
+    return new ASN1GeneralizedTime(listener.highWaterTimestamp);
   }
 
-  public void readAllLdapEntryUIDs()
-    throws Throwable
+  private class StreamingSearchListener implements SearchResultListener
+  {
+    private static final long serialVersionUID = -1526245418862407329L;
+
+    private final Pattern pattern;
+
+    private final BiConsumer<String, SearchResultEntry> entryConsumer;
+
+    private long highWaterTimestamp;
+
+    private int matchingEntries;
+
+    private StreamingSearchListener(Pattern pattern, long lastSyncTimestamp,
+      BiConsumer<String, SearchResultEntry> entryConsumer)
+    {
+      this.pattern = pattern;
+      this.highWaterTimestamp = lastSyncTimestamp;
+      this.entryConsumer = entryConsumer;
+    }
+
+    @Override
+    public void searchEntryReturned(SearchResultEntry entry)
+    {
+      highWaterTimestamp = Math.max(highWaterTimestamp, timestampOf(entry));
+
+      String value = entry.getAttributeValue(ldapUserId);
+      if(value != null)
+      {
+        String uid = value.trim().toLowerCase();
+        if(pattern.matcher(uid).matches())
+        {
+          matchingEntries++;
+          entryConsumer.accept(uid, entry);
+        }
+      }
+    }
+
+    @Override
+    public void searchReferenceReturned(SearchResultReference reference)
+    {
+      // referrals are not followed
+    }
+  }
+
+  /**
+   * Looks up candidate UIDs before they are handed out. Every chunk of
+   * {@code uidgen.verify.chunk-size} UIDs is searched with a single
+   * {@code (|(uid=a)(uid=b)...)} filter, all chunks are sent at once on one
+   * connection, so a batch costs about one round trip.
+   *
+   * @return the UIDs (lower case) already present in the directory
+   */
+  public Set<String> findExistingUids(List<String> uids) throws LDAPException
   {
-    readLdapEntries(new ASN1GeneralizedTime(0), false);
+    Set<String> existingUids = ConcurrentHashMap.newKeySet();
+
+    if(uids.isEmpty())
+    {
+      return existingUids;
+    }
+
+    UidgenConfig.Verify verify = uidgenConfig.getVerify();
+    int chunkSize = Math.max(1, verify.getChunkSize());
+    ExistingUidListener listener = new ExistingUidListener(existingUids);
+
+    LDAPConnectionPool pool;
+    try
+    {
+      pool = getConnectionPool();
+    }
+    catch(LDAPException e)
+    {
+      throw e;
+    }
+    catch(Exception e)
+    {
+      throw new LDAPException(ResultCode.CONNECT_ERROR, e.getMessage(), e);
+    }
+
+    LDAPConnection connection = pool.getConnection();
+    try
+    {
+      List<AsyncRequestID> requestIds = new ArrayList<>();
+      for(int i = 0; i < uids.size(); i += chunkSize)
+      {
+        List<Filter> uidFilters = new ArrayList<>();
+        for(String uid : uids.subList(i, Math.min(i + chunkSize, uids.size())))
+        {
+          uidFilters.add(Filter.createEqualityFilter(ldapUserId, uid));
+        }
+
+        SearchRequest searchRequest = new SearchRequest(listener, ldapBaseDn,
+          SearchScope.SUB, Filter.createORFilter(uidFilters), ldapUserId);
+        searchRequest.setResponseTimeoutMillis(verify.getTimeout());
+        requestIds.add(connection.asyncSearch(searchRequest));
+      }
+
+      for(AsyncRequestID requestId : requestIds)
+      {
+        LDAPResult result =
+          requestId.get(verify.getTimeout(), TimeUnit.MILLISECONDS);
+        if(result.getResultCode() != ResultCode.SUCCESS)
+        {
+          throw new LDAPException(result);
+        }
+      }
+
+      pool.releaseConnection(connection);
+    }
+    catch(LDAPException e)
+    {
+      pool.releaseConnectionAfterException(connection, e);
+      throw e;
+    }
+    catch(InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      pool.releaseDefunctConnection(connection);
+      throw new LDAPException(ResultCode.USER_CANCELED, e.getMessage(), e);
+    }
+    catch(TimeoutException e)
+    {
+      // outstanding responses would end up with the next user
+      pool.releaseDefunctConnection(connection);
+      throw new LDAPException(ResultCode.TIMEOUT, "verifying "
+        + uids.size() + " UIDs failed", e);
+    }
+
+    LOGGER.debug("verified {} UIDs, {} exist", uids.size(),
+      existingUids.size());
+    return existingUids;
   }
 
-  public void readAllLdapEntries() throws Throwable
+  private class ExistingUidListener implements AsyncSearchResultListener
   {
-    readLdapEntries(new ASN1GeneralizedTime(0), true);
+    private static final long serialVersionUID = 5120862734410958215L;
+
+    private final Set<String> existingUids;
+
+    private ExistingUidListener(Set<String> existingUids)
+    {
+      this.existingUids = existingUids;
+    }
+
+    @Override
+    public void searchEntryReturned(SearchResultEntry entry)
+    {
+      String value = entry.getAttributeValue(ldapUserId);
+      if(value != null)
+      {
+        existingUids.add(value.trim().toLowerCase());
+      }
+    }
+
+    @Override
+    public void searchReferenceReturned(SearchResultReference reference)
+    {
+      // referrals are not followed
+    }
+
+    @Override
+    public void searchResultReceived(AsyncRequestID requestId,
+      SearchResult searchResult)
+    {
+      // collected by the waiting caller
+    }
   }
 
-  public void test()
-    throws Throwable
+  /**
+   * @return pattern matching the UIDs of all pools
+   */
+  private Pattern uidPattern()
   {
-    LOGGER.debug("basedn={}", ldapBaseDn);
-    LOGGER.debug("scope={}", ldapScope);
-    LOGGER.debug("user id={}", ldapUserId);
+    String regex = "^("
+      + uidgenConfig.getAllPools().values().stream()
+        .map(pool -> Pattern.quote(pool.getUniqueTag().toLowerCase()))
+        .collect(Collectors.joining("|"))
+      + ")\\d+$";
+    return Pattern.compile(regex);
+  }
 
-    // readAllLdapEntryUIDs();
-    // printLdapEntriesMap();
-    readLdapEntries(new ASN1GeneralizedTime(0), true);
-    printLdapEntriesMap();
+  /**
+   * Starts a background thread keeping a persistent search on
+   * {@code ldap.base-dn} open. Every added or changed entry with a UID of
+   * one of the pools is passed to {@code uidConsumer}. The connection is
+   * reestablished after failures with an increasing delay, once the search
+   * is (re)established {@code resumeHandler} is called to catch up with
+   * changes missed in between.
+   */
+  public void startPersistentSearch(Consumer<String> uidConsumer,
+    Runnable resumeHandler)
+  {
+    if( ! persistentSearchEnabled || persistentSearchThread != null)
+    {
+      return;
+    }
+
+    persistentSearchRunning = true;
+    persistentSearchThread = threadBuilder().name("ldap-persistent-search")
+      .start(() -> runPersistentSearch(uidConsumer, resumeHandler));
   }
 
-  @Getter
-  private final HashMap<String, Entry> ldapEntryMap = new HashMap<>();
+  public void stopPersistentSearch()
+  {
+    persistentSearchRunning = false;
+
+    LDAPConnection connection = persistentSearchConnection;
+    if(connection != null)
+    {
+      connection.close();
+    }
+
+    if(persistentSearchThread != null)
+    {
+      persistentSearchThread.interrupt();
+      persistentSearchThread = null;
+    }
+  }
+
+  private void runPersistentSearch(Consumer<String> uidConsumer,
+    Runnable resumeHandler)
+  {
+    Pattern pattern = uidPattern();
+    String filter = new MessageFormat(ldapFilter).format(new Object[]
+    {
+      new ASN1GeneralizedTime(0).toString()
+    });
+    long reconnectDelay = persistentSearchReconnectDelay;
+
+    while(persistentSearchRunning)
+    {
+      try(LDAPConnection connection = getConnection())
+      {
+        persistentSearchConnection = connection;
+
+        SearchRequest searchRequest = new SearchRequest(
+          new PersistentSearchListener(pattern, uidConsumer),
+          ldapBaseDn, SearchScope.SUB, filter, ldapUserId);
+        searchRequest.addControl(new PersistentSearchRequestControl(
+          EnumSet.of(PersistentSearchChangeType.ADD,
+            PersistentSearchChangeType.MODIFY,
+            PersistentSearchChangeType.MODIFY_DN), true, false));
+
+        AsyncRequestID requestId = connection.asyncSearch(searchRequest);
+        LOGGER.info("persistent search started on {}", ldapBaseDn);
+        reconnectDelay = persistentSearchReconnectDelay;
+
+        resumeHandler.run();
+
+        // only returns when the search is terminated
+        LDAPResult result = requestId.get();
+        LOGGER.warn("persistent search terminated: {}", result);
+      }
+      catch(InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      catch(Exception e)
+      {
+        if(persistentSearchRunning)
+        {
+          LOGGER.warn("persistent search failed: {}", e.getMessage());
+        }
+      }
+      finally
+      {
+        persistentSearchConnection = null;
+      }
+
+      if(persistentSearchRunning)
+      {
+        try
+        {
+          Thread.sleep(reconnectDelay);
+        }
+        catch(InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY);
+      }
+    }
+
+    LOGGER.info("persistent search stopped");
+  }
+
+  private class PersistentSearchListener implements AsyncSearchResultListener
+  {
+    private static final long serialVersionUID = 3866514024731559710L;
+
+    private final Pattern pattern;
+
+    private final Consumer<String> uidConsumer;
+
+    private PersistentSearchListener(Pattern pattern,
+      Consumer<String> uidConsumer)
+    {
+      this.pattern = pattern;
+      this.uidConsumer = uidConsumer;
+    }
+
+    @Override
+    public void searchEntryReturned(SearchResultEntry entry)
+    {
+      String value = entry.getAttributeValue(ldapUserId);
+      if(value != null)
+      {
+        String uid = value.trim().toLowerCase();
+        if(pattern.matcher(uid).matches())
+        {
+          LOGGER.debug("persistent search: {}", uid);
+          uidConsumer.accept(uid);
+        }
+      }
+    }
+
+    @Override
+    public void searchReferenceReturned(SearchResultReference reference)
+    {
+      // referrals are not followed
+    }
+
+    @Override
+    public void searchResultReceived(AsyncRequestID requestId,
+      SearchResult searchResult)
+    {
+      // handled by the waiting persistent search thread
+    }
+  }
+
+  private static String[] withTimestamps(String... attributeNames)
+  {
+    String[] names = Arrays.copyOf(attributeNames, attributeNames.length + 2);
+    names[attributeNames.length] = MODIFY_TIMESTAMP;
+    names[attributeNames.length + 1] = CREATE_TIMESTAMP;
+    return names;
+  }
+
+  private static long timestampOf(Entry entry)
+  {
+    long timestamp = 0;
+
+    for(String name : new String[]
+    {
+      MODIFY_TIMESTAMP, CREATE_TIMESTAMP
+    })
+    {
+      Date date = entry.getAttributeValueAsDate(name);
+      if(date != null)
+      {
+        timestamp = Math.max(timestamp, date.getTime());
+      }
+    }
+
+    return timestamp;
+  }
+
+  /**
+   * @return first value of the attribute or {@code null} if the entry has
+   *         no such attribute
+   */
+  public String readAttributeValue(String dn, String attributeName)
+    throws Exception
+  {
+    Entry entry = getConnectionPool().getEntry(dn, attributeName);
+
+    if(entry == null)
+    {
+      throw new LDAPException(ResultCode.NO_SUCH_OBJECT, dn);
+    }
+
+    return entry.getAttributeValue(attributeName);
+  }
+
+  /**
+   * Replaces the attribute value only if the directory still holds the
+   * expected value, using an LDAP assertion request control (RFC 4528).
+   *
+   * @param expectedValue current value or {@code null} if the attribute is
+   *                      expected to be absent
+   * @param newValue      new value, {@code null} or empty removes the
+   *                      attribute
+   *
+   * @return {@code false} if the assertion failed
+   */
+  public boolean compareAndSwap(String dn, String attributeName,
+    String expectedValue, String newValue)
+    throws Exception
+  {
+    Filter assertion = (expectedValue == null)
+      ? Filter.createNOTFilter(Filter.createPresenceFilter(attributeName))
+      : Filter.createEqualityFilter(attributeName, expectedValue);
+
+    Modification modification = (newValue == null || newValue.isEmpty())
+      ? new Modification(ModificationType.REPLACE, attributeName)
+      : new Modification(ModificationType.REPLACE, attributeName, newValue);
+
+    ModifyRequest modifyRequest = new ModifyRequest(dn, modification);
+    modifyRequest.addControl(new AssertionRequestControl(assertion));
+
+    try
+    {
+      getConnectionPool().modify(modifyRequest);
+      return true;
+    }
+    catch(LDAPException e)
+    {
+      if(e.getResultCode() == ResultCode.ASSERTION_FAILED)
+      {
+        LOGGER.debug("assertion failed: {}", assertion);
+        return false;
+      }
+      throw e;
+    }
+  }
 
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.handler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.function.ToIntFunction;
+import java.util.zip.CRC32C;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads and writes memory mapped snapshots of the occupancy table.
+ *
+ * File layout (little endian): a 64 byte header followed by the bitmap words.
+ *
+ * <pre>
+ *  0 magic         int
+ *  4 version       int
+ *  8 size          int
+ * 12 word count    int
+ * 16 tag hash      int
+ * 20 taken slots   int
+ * 24 created at    long
+ * 32 CRC32C words  long
+ * </pre>
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+@Component
+public class SnapshotHandler
+{
+  private final static int MAGIC = 0x55494453; // "UIDS"
+
+  private final static int VERSION = 1;
+
+  private final static int HEADER_SIZE = 64;
+
+  @Getter
+  @Value("${uidgen.snapshot.enabled:true}")
+  private boolean enabled;
+
+  @Getter
+  @Value("${uidgen.snapshot.file:data/occupancy.snapshot}")
+  private String snapshotFile;
+
+  /**
+   * Writes the occupancy table to a temporary file and atomically moves it
+   * over the previous snapshot.
+   *
+   * @param path       snapshot file
+   * @param uniqueTag  unique tag of the pool
+   * @param size       number of slots
+   * @param wordCount  number of bitmap words
+   * @param wordWriter puts all bitmap words into the given buffer and
+   *                   returns the number of taken slots
+   */
+  public void write(Path path, String uniqueTag, int size, int wordCount,
+    ToIntFunction<LongBuffer> wordWriter)
+    throws IOException
+  {
+    Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+    long fileSize = HEADER_SIZE + (long)wordCount * Long.BYTES;
+
+    Files.deleteIfExists(tmpPath);
+
+    int takenSlots;
+
+    try(FileChannel channel = FileChannel.open(tmpPath,
+      StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+      StandardOpenOption.WRITE))
+    {
+      MappedByteBuffer buffer =
+        channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+      ByteBuffer words = buffer.slice(HEADER_SIZE, (int)(fileSize - HEADER_SIZE))
+        .order(ByteOrder.LITTLE_ENDIAN);
+      takenSlots = wordWriter.applyAsInt(words.asLongBuffer());
+
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, VERSION);
+      buffer.putInt(8, size);
+      buffer.putInt(12, wordCount);
+      buffer.putInt(16, uniqueTag.hashCode());
+      buffer.putInt(20, takenSlots);
+      buffer.putLong(24, System.currentTimeMillis());
+      buffer.putLong(32, checksum(words.rewind()));
+      buffer.force();
+    }
+
+    Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE);
+
+    log.debug("snapshot written: {}, {} bytes, {} taken", path, fileSize,
+      takenSlots);
+  }
+
+  /**
+   * Loads the snapshot into the occupancy table.
+   *
+   * @param path       snapshot file
+   * @param uniqueTag  unique tag of the pool
+   * @param size       number of slots
+   * @param wordCount  number of bitmap words
+   * @param wordReader reads all bitmap words from the given buffer and
+   *                   returns the number of taken slots
+   *
+   * @return number of taken slots or {@code -1} if there is no usable
+   *         snapshot, the reader is not called if the header or checksum
+   *         does not match
+   */
+  public int read(Path path, String uniqueTag, int size, int wordCount,
+    ToIntFunction<LongBuffer> wordReader)
+  {
+    if( ! Files.isRegularFile(path))
+    {
+      log.info("no snapshot found: {}", path);
+      return -1;
+    }
+
+    long fileSize = HEADER_SIZE + (long)wordCount * Long.BYTES;
+
+    try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+    {
+      if(channel.size() != fileSize)
+      {
+        log.warn("snapshot size mismatch: {} != {}", channel.size(), fileSize);
+        return -1;
+      }
+
+      MappedByteBuffer buffer =
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+      if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+        || buffer.getInt(8) != size
+        || buffer.getInt(12) != wordCount
+        || buffer.getInt(16) != uniqueTag.hashCode())
+      {
+        log.warn("snapshot header does not match current configuration");
+        return -1;
+      }
+
+      ByteBuffer words = buffer.slice(HEADER_SIZE, (int)(fileSize - HEADER_SIZE))
+        .order(ByteOrder.LITTLE_ENDIAN);
+
+      if(checksum(words) != buffer.getLong(32))
+      {
+        log.warn("snapshot checksum mismatch");
+        return -1;
+      }
+
+      int takenSlots = wordReader.applyAsInt(words.rewind().asLongBuffer());
+
+      if(takenSlots != buffer.getInt(20))
+      {
+        log.warn("snapshot taken slots mismatch");
+        return -1;
+      }
+
+      log.info("snapshot loaded: {}, {} taken, created at {}", path, takenSlots,
+        Instant.ofEpochMilli(buffer.getLong(24)));
+
+      return takenSlots;
+    }
+    catch(IOException e)
+    {
+      log.warn("reading snapshot failed: {}", e.getMessage());
+      return -1;
+    }
+  }
+
+  private static long checksum(ByteBuffer buffer)
+  {
+    CRC32C crc = new CRC32C();
+    crc.update(buffer);
+    return crc.getValue();
+  }
+
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bit packed occupancy table, 64 slots per {@code long} word.
+ *
+ * On top of the slot words a hierarchy of summary levels is maintained.
+ * Bit {@code i} of level {@code k} is set if word {@code i} of level
+ * {@code k - 1} is completely taken. The top level consists of a single
+ * word, so {@link #nextFree(long)} needs at most two word operations per
+ * level (five levels for 10^9 slots) regardless of the fill level.
+ *
+ * Optionally a {@link RunTree} keeps the longest free and taken runs up to
+ * date on every change.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public class BitmapOccupancy implements UidOccupancy
+{
+  private final static int ADDRESS_BITS_PER_WORD = 6;
+
+  private final static int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+
+  private final static long FULL = -1L;
+
+  private final int size;
+
+  /**
+   * levels[0] holds the slots, levels[levels.length - 1] is a single word.
+   */
+  private final long[][] levels;
+
+  private final long[] words;
+
+  private final RunTree runs;
+
+  public BitmapOccupancy(int size)
+  {
+    this(size, false);
+  }
+
+  public BitmapOccupancy(int size, boolean trackRuns)
+  {
+    if(size < 0)
+    {
+      throw new IllegalArgumentException("size < 0: " + size);
+    }
+    this.size = size;
+
+    List<long[]> levelList = new ArrayList<>();
+    int length = wordCount(size);
+    levelList.add(new long[length]);
+    while(length > 1)
+    {
+      length = wordCount(length);
+      levelList.add(new long[length]);
+    }
+
+    this.levels = levelList.toArray(long[][] :: new);
+    this.words = levels[0];
+    this.runs = trackRuns ? new RunTree(words, size) : null;
+  }
+
+  private static int wordCount(int bits)
+  {
+    return (int)((bits + (long)BITS_PER_WORD - 1) >>> ADDRESS_BITS_PER_WORD);
+  }
+
+  private static int wordIndex(int index)
+  {
+    return index >>> ADDRESS_BITS_PER_WORD;
+  }
+
+  @Override
+  public long size()
+  {
+    return size;
+  }
+
+  @Override
+  public boolean isTaken(long index)
+  {
+    return (words[wordIndex((int)index)] & (1L << index)) != 0;
+  }
+
+  @Override
+  public boolean take(long index)
+  {
+    int position = (int)index;
+
+    for(int level = 0; level < levels.length; level++)
+    {
+      long[] bits = levels[level];
+      int wordIndex = wordIndex(position);
+      long word = bits[wordIndex];
+      long mask = 1L << position;
+
+      if((word & mask) != 0)
+      {
+        if(level == 0)
+        {
+          return false;
+        }
+        break;
+      }
+
+      word |= mask;
+      bits[wordIndex] = word;
+
+      if(word != FULL)
+      {
+        break;
+      }
+
+      position = wordIndex;
+    }
+
+    if(runs != null)
+    {
+      runs.update(wordIndex((int)index));
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean release(long index)
+  {
+    int position = (int)index;
+
+    for(int level = 0; level < levels.length; level++)
+    {
+      long[] bits = levels[level];
+      int wordIndex = wordIndex(position);
+      long word = bits[wordIndex];
+      long mask = 1L << position;
+
+      if((word & mask) == 0)
+      {
+        if(level == 0)
+        {
+          return false;
+        }
+        break;
+      }
+
+      bits[wordIndex] = word & ~mask;
+
+      if(word != FULL)
+      {
+        break;
+      }
+
+      position = wordIndex;
+    }
+
+    if(runs != null)
+    {
+      runs.update(wordIndex((int)index));
+    }
+
+    return true;
+  }
+
+  @Override
+  public long nextFree(long fromIndex)
+  {
+    if(fromIndex < 0 || fromIndex >= size)
+    {
+      return -1;
+    }
+
+    // ascend until a level has a non full entry at or after the position
+    int level = 0;
+    int position = (int)fromIndex;
+    long free;
+
+    while(true)
+    {
+      long[] bits = levels[level];
+      int wordIndex = wordIndex(position);
+
+      if(wordIndex >= bits.length)
+      {
+        return -1;
+      }
+
+      free = ~bits[wordIndex] & (FULL << position);
+
+      if(free != 0)
+      {
+        position = (wordIndex << ADDRESS_BITS_PER_WORD)
+          + Long.numberOfTrailingZeros(free);
+        break;
+      }
+
+      level++;
+
+      if(level == levels.length)
+      {
+        return -1;
+      }
+
+      position = wordIndex + 1;
+    }
+
+    // descend to the first free slot below that entry
+    while(level > 0)
+    {
+      level--;
+      long[] bits = levels[level];
+
+      if(position >= bits.length)
+      {
+        return -1;
+      }
+
+      free = ~bits[position];
+      position = (position << ADDRESS_BITS_PER_WORD)
+        + Long.numberOfTrailingZeros(free);
+    }
+
+    return position < size ? position : -1;
+  }
+
+  @Override
+  public void clear()
+  {
+    for(long[] bits : levels)
+    {
+      Arrays.fill(bits, 0L);
+    }
+
+    if(runs != null)
+    {
+      runs.rebuild();
+    }
+  }
+
+  @Override
+  public RunSummary runs()
+  {
+    return (runs != null) ? runs.summary() : null;
+  }
+
+  /**
+   * @return number of taken slots in {@code [fromIndex, toIndex)}
+   */
+  public int countTaken(int fromIndex, int toIndex)
+  {
+    int taken = 0;
+
+    for(int index = fromIndex; index < toIndex; )
+    {
+      int wordIndex = wordIndex(index);
+      long word = words[wordIndex] & (FULL << index);
+      int wordEnd = (wordIndex + 1) << ADDRESS_BITS_PER_WORD;
+
+      if(toIndex < wordEnd)
+      {
+        word &= ~(FULL << toIndex);
+      }
+
+      taken += Long.bitCount(word);
+      index = wordEnd;
+    }
+
+    return taken;
+  }
+
+  /**
+   * @return number of {@code long} words backing the slots of this table
+   */
+  public int wordCount()
+  {
+    return words.length;
+  }
+
+  /**
+   * Copies all slot words into the buffer, starting at its current position.
+   */
+  public void writeWords(LongBuffer buffer)
+  {
+    buffer.put(words);
+  }
+
+  /**
+   * Replaces all slot words with {@link #wordCount()} words read from the
+   * buffer and rebuilds the summary levels.
+   *
+   * @return number of taken slots
+   */
+  public int readWords(LongBuffer buffer)
+  {
+    buffer.get(words);
+
+    int taken = 0;
+    for(long word : words)
+    {
+      taken += Long.bitCount(word);
+    }
+
+    for(int level = 1; level < levels.length; level++)
+    {
+      long[] lower = levels[level - 1];
+      long[] bits = levels[level];
+      Arrays.fill(bits, 0L);
+      for(int i = 0; i < lower.length; i++)
+      {
+        if(lower[i] == FULL)
+        {
+          bits[wordIndex(i)] |= 1L << i;
+        }
+      }
+    }
+
+    if(runs != null)
+    {
+      runs.rebuild();
+    }
+
+    return taken;
+  }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Roaring style occupancy set for large UID spaces. The space is divided
+ * into chunks of 2^16 slots, only chunks with taken slots have a container.
+ * A container is a sorted array of the taken slots while it holds at most
+ * 4096 of them and a 1024 word bitmap above that. Memory grows with the
+ * number of taken UIDs, not with the size of the UID space.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public class CompressedOccupancy implements UidOccupancy
+{
+  private final static int CHUNK_BITS = 16;
+
+  private final static int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  private final static int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final static int ARRAY_MAX_SIZE = 4096;
+
+  private final long size;
+
+  private final Map<Long, Container> chunks = new HashMap<>();
+
+  public CompressedOccupancy(long size)
+  {
+    if(size < 0)
+    {
+      throw new IllegalArgumentException("size < 0: " + size);
+    }
+    this.size = size;
+  }
+
+  @Override
+  public long size()
+  {
+    return size;
+  }
+
+  /**
+   * @return number of chunks holding at least one taken slot
+   */
+  public int chunkCount()
+  {
+    return chunks.size();
+  }
+
+  @Override
+  public boolean isTaken(long index)
+  {
+    Container container = chunks.get(index >>> CHUNK_BITS);
+    return container != null && container.contains((int)(index & CHUNK_MASK));
+  }
+
+  @Override
+  public boolean take(long index)
+  {
+    Long key = index >>> CHUNK_BITS;
+    int low = (int)(index & CHUNK_MASK);
+    Container container = chunks.get(key);
+
+    if(container == null)
+    {
+      container = new ArrayContainer();
+      chunks.put(key, container);
+    }
+    else if(container.contains(low))
+    {
+      return false;
+    }
+
+    Container result = container.add(low);
+    if(result != container)
+    {
+      chunks.put(key, result);
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean release(long index)
+  {
+    Long key = index >>> CHUNK_BITS;
+    int low = (int)(index & CHUNK_MASK);
+    Container container = chunks.get(key);
+
+    if(container == null || ! container.contains(low))
+    {
+      return false;
+    }
+
+    Container result = container.remove(low);
+    if(result.cardinality() == 0)
+    {
+      chunks.remove(key);
+    }
+    else if(result != container)
+    {
+      chunks.put(key, result);
+    }
+
+    return true;
+  }
+
+  @Override
+  public long nextFree(long fromIndex)
+  {
+    if(fromIndex < 0 || fromIndex >= size)
+    {
+      return -1;
+    }
+
+    long key = fromIndex >>> CHUNK_BITS;
+    int low = (int)(fromIndex & CHUNK_MASK);
+
+    while((key << CHUNK_BITS) < size)
+    {
+      Container container = chunks.get(key);
+      int free = (container == null) ? low : container.nextAbsent(low);
+
+      if(free >= 0)
+      {
+        long index = (key << CHUNK_BITS) + free;
+        return index < size ? index : -1;
+      }
+
+      key++;
+      low = 0;
+    }
+
+    return -1;
+  }
+
+  @Override
+  public void clear()
+  {
+    chunks.clear();
+  }
+
+  private static abstract class Container
+  {
+    abstract int cardinality();
+
+    abstract boolean contains(int value);
+
+    /**
+     * Adds an absent value.
+     *
+     * @return this or a converted container holding the value
+     */
+    abstract Container add(int value);
+
+    /**
+     * Removes a present value.
+     *
+     * @return this or a converted container without the value
+     */
+    abstract Container remove(int value);
+
+    /**
+     * @return first absent value {@code >= from} or {@code -1}
+     */
+    abstract int nextAbsent(int from);
+  }
+
+  private final static class ArrayContainer extends Container
+  {
+    private char[] values = new char[4];
+
+    private int cardinality;
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int value)
+    {
+      return Arrays.binarySearch(values, 0, cardinality, (char)value) >= 0;
+    }
+
+    @Override
+    Container add(int value)
+    {
+      if(cardinality == ARRAY_MAX_SIZE)
+      {
+        BitmapContainer bitmap = new BitmapContainer();
+        for(int i = 0; i < cardinality; i++)
+        {
+          bitmap.add(values[i]);
+        }
+        return bitmap.add(value);
+      }
+
+      int position = -Arrays.binarySearch(values, 0, cardinality, (char)value) - 1;
+
+      if(cardinality == values.length)
+      {
+        values = Arrays.copyOf(values,
+          Math.min(ARRAY_MAX_SIZE, values.length * 2));
+      }
+
+      System.arraycopy(values, position, values, position + 1,
+        cardinality - position);
+      values[position] = (char)value;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(int value)
+    {
+      int position = Arrays.binarySearch(values, 0, cardinality, (char)value);
+      System.arraycopy(values, position + 1, values, position,
+        cardinality - position - 1);
+      cardinality--;
+      return this;
+    }
+
+    @Override
+    int nextAbsent(int from)
+    {
+      int position = Arrays.binarySearch(values, 0, cardinality, (char)from);
+
+      if(position < 0)
+      {
+        return from;
+      }
+
+      int value = from;
+      while(position < cardinality && values[position] == value)
+      {
+        position++;
+        value++;
+      }
+
+      return value < CHUNK_SIZE ? value : -1;
+    }
+  }
+
+  private final static class BitmapContainer extends Container
+  {
+    private final long[] words = new long[CHUNK_SIZE / Long.SIZE];
+
+    private int cardinality;
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int value)
+    {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    Container add(int value)
+    {
+      words[value >>> 6] |= 1L << value;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Container remove(int value)
+    {
+      words[value >>> 6] &= ~(1L << value);
+      cardinality--;
+
+      // hysteresis, convert back well below the array limit
+      if(cardinality <= ARRAY_MAX_SIZE / 2)
+      {
+        ArrayContainer array = new ArrayContainer();
+        array.values = new char[ARRAY_MAX_SIZE];
+        for(int i = 0; i < words.length; i++)
+        {
+          long word = words[i];
+          while(word != 0)
+          {
+            array.values[array.cardinality++] =
+              (char)((i << 6) + Long.numberOfTrailingZeros(word));
+            word &= word - 1;
+          }
+        }
+        return array;
+      }
+
+      return this;
+    }
+
+    @Override
+    int nextAbsent(int from)
+    {
+      if(cardinality == CHUNK_SIZE)
+      {
+        return -1;
+      }
+
+      int wordIndex = from >>> 6;
+      long free = ~words[wordIndex] & (-1L << from);
+
+      while(free == 0)
+      {
+        wordIndex++;
+        if(wordIndex == words.length)
+        {
+          return -1;
+        }
+        free = ~words[wordIndex];
+      }
+
+      return (wordIndex << 6) + Long.numberOfTrailingZeros(free);
+    }
+  }
+
+}
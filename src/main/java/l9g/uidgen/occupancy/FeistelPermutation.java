@@ -0,0 +1,112 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+/**
+ * Keyed pseudo random permutation of {@code [0, domainSize)}.
+ *
+ * A balanced Feistel network permutes the smallest even bit width covering
+ * the domain, values outside the domain are encrypted again (cycle walking)
+ * until they fall into it. Every index of the domain is hit exactly once
+ * while walking {@code permute(0) ... permute(domainSize - 1)}.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public class FeistelPermutation
+{
+  private final static int ROUNDS = 6;
+
+  private final static long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private final long domainSize;
+
+  private final int halfBits;
+
+  private final long halfMask;
+
+  private final long[] roundKeys = new long[ROUNDS];
+
+  public FeistelPermutation(long domainSize, long key)
+  {
+    if(domainSize < 1)
+    {
+      throw new IllegalArgumentException("domainSize < 1: " + domainSize);
+    }
+
+    this.domainSize = domainSize;
+
+    int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(domainSize - 1));
+    this.halfBits = (bits + 1) / 2;
+    this.halfMask = (1L << halfBits) - 1;
+
+    for(int i = 0; i < ROUNDS; i++)
+    {
+      roundKeys[i] = mix64(key + (i + 1) * GOLDEN_GAMMA);
+    }
+  }
+
+  public long getDomainSize()
+  {
+    return domainSize;
+  }
+
+  /**
+   * @return the image of {@code value}, {@code 0 <= value < domainSize}
+   */
+  public long permute(long value)
+  {
+    if(value < 0 || value >= domainSize)
+    {
+      throw new IllegalArgumentException("value out of domain: " + value);
+    }
+
+    long result = value;
+
+    do
+    {
+      result = encrypt(result);
+    }
+    while(result >= domainSize);
+
+    return result;
+  }
+
+  private long encrypt(long value)
+  {
+    long left = (value >>> halfBits) & halfMask;
+    long right = value & halfMask;
+
+    for(long roundKey : roundKeys)
+    {
+      long next = left ^ (mix64(right ^ roundKey) & halfMask);
+      left = right;
+      right = next;
+    }
+
+    return (left << halfBits) | right;
+  }
+
+  /**
+   * SplitMix64 finalizer.
+   */
+  private static long mix64(long z)
+  {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+/**
+ * Free and taken runs of a contiguous range of slots. Leading runs start
+ * at the lowest slot, trailing runs end at the highest slot, so adjacent
+ * ranges can be combined without looking at their slots again.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public record RunSummary(long length,
+  long leadingFree, long trailingFree, long longestFree,
+  long leadingTaken, long trailingTaken, long longestTaken)
+{
+  /**
+   * @return summary of {@code this} directly followed by {@code next}
+   */
+  public RunSummary append(RunSummary next)
+  {
+    return new RunSummary(length + next.length,
+      (leadingFree == length) ? length + next.leadingFree : leadingFree,
+      (next.trailingFree == next.length)
+        ? next.length + trailingFree : next.trailingFree,
+      Math.max(Math.max(longestFree, next.longestFree),
+        trailingFree + next.leadingFree),
+      (leadingTaken == length) ? length + next.leadingTaken : leadingTaken,
+      (next.trailingTaken == next.length)
+        ? next.length + trailingTaken : next.trailingTaken,
+      Math.max(Math.max(longestTaken, next.longestTaken),
+        trailingTaken + next.leadingTaken));
+  }
+
+}
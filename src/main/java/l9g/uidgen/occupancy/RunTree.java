@@ -0,0 +1,298 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+import java.util.Arrays;
+
+/**
+ * Longest free and taken runs of a bitmap, maintained incrementally.
+ *
+ * A binary tree over leaves of 64 words (4096 slots) keeps the leading,
+ * trailing and longest free and taken run of every subtree. A change
+ * updates the cached longest runs of its word and marks the leaf dirty.
+ * {@link #summary()} recomputes the dirty leaves from the word caches and
+ * their paths up to the root, so a batch of changes costs one leaf update
+ * per touched leaf and the runs are never found by scanning the table.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class RunTree
+{
+  private final static int LEAF_WORDS = 64;
+
+  // node fields, interleaved in one array
+  private final static int LENGTH = 0;
+
+  private final static int LEADING_FREE = 1;
+
+  private final static int TRAILING_FREE = 2;
+
+  private final static int LONGEST_FREE = 3;
+
+  private final static int LEADING_TAKEN = 4;
+
+  private final static int TRAILING_TAKEN = 5;
+
+  private final static int LONGEST_TAKEN = 6;
+
+  private final static int NODE_INTS = 8;
+
+  private final long[] words;
+
+  private final int size;
+
+  private final byte[] wordLongestFree;
+
+  private final byte[] wordLongestTaken;
+
+  /**
+   * Number of leaves, a power of two, node 1 is the root and the leaves
+   * start at node {@code leaves}.
+   */
+  private final int leaves;
+
+  private final int[] nodes;
+
+  private final long[] dirtyLeaves;
+
+  private boolean dirty;
+
+  RunTree(long[] words, int size)
+  {
+    this.words = words;
+    this.size = size;
+    this.wordLongestFree = new byte[words.length];
+    this.wordLongestTaken = new byte[words.length];
+
+    int leafCount = Math.max(1, (words.length + LEAF_WORDS - 1) / LEAF_WORDS);
+    this.leaves = (leafCount == 1) ? 1 : Integer.highestOneBit(leafCount - 1) << 1;
+    this.nodes = new int[2 * leaves * NODE_INTS];
+    this.dirtyLeaves = new long[(leaves + 63) >>> 6];
+
+    rebuild();
+  }
+
+  /**
+   * Called after the word has changed.
+   */
+  void update(int wordIndex)
+  {
+    updateWord(wordIndex);
+
+    int leaf = wordIndex / LEAF_WORDS;
+    dirtyLeaves[leaf >>> 6] |= 1L << leaf;
+    dirty = true;
+  }
+
+  /**
+   * Recomputes the whole tree after bulk changes of the words.
+   */
+  void rebuild()
+  {
+    for(int i = 0; i < words.length; i++)
+    {
+      updateWord(i);
+    }
+
+    for(int node = leaves; node < 2 * leaves; node++)
+    {
+      updateLeaf(node);
+    }
+
+    for(int node = leaves - 1; node > 0; node--)
+    {
+      updateNode(node);
+    }
+
+    Arrays.fill(dirtyLeaves, 0L);
+    dirty = false;
+  }
+
+  RunSummary summary()
+  {
+    if(dirty)
+    {
+      refresh();
+    }
+
+    int root = NODE_INTS;
+    return new RunSummary(nodes[root + LENGTH],
+      nodes[root + LEADING_FREE], nodes[root + TRAILING_FREE],
+      nodes[root + LONGEST_FREE], nodes[root + LEADING_TAKEN],
+      nodes[root + TRAILING_TAKEN], nodes[root + LONGEST_TAKEN]);
+  }
+
+  private void refresh()
+  {
+    for(int i = 0; i < dirtyLeaves.length; i++)
+    {
+      long bits = dirtyLeaves[i];
+      dirtyLeaves[i] = 0;
+
+      while(bits != 0)
+      {
+        int node = leaves + (i << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+
+        updateLeaf(node);
+        for(node >>>= 1; node > 0; node >>>= 1)
+        {
+          updateNode(node);
+        }
+      }
+    }
+
+    dirty = false;
+  }
+
+  private int wordBits(int wordIndex)
+  {
+    return Math.min(Long.SIZE, size - wordIndex * Long.SIZE);
+  }
+
+  private void updateWord(int wordIndex)
+  {
+    int bits = wordBits(wordIndex);
+    long taken = words[wordIndex];
+    long free = ~taken & (-1L >>> (Long.SIZE - bits));
+
+    wordLongestFree[wordIndex] = (byte)longestRun(free);
+    wordLongestTaken[wordIndex] = (byte)longestRun(taken);
+  }
+
+  /**
+   * @return length of the longest run of set bits
+   */
+  private static int longestRun(long bits)
+  {
+    if(bits == -1L)
+    {
+      return Long.SIZE;
+    }
+
+    // runN: bit i is set if bits i .. i + N - 1 are all set
+    long run1 = bits;
+    long run2 = run1 & (run1 >>> 1);
+    long run4 = run2 & (run2 >>> 2);
+    long run8 = run4 & (run4 >>> 4);
+    long run16 = run8 & (run8 >>> 8);
+    long run32 = run16 & (run16 >>> 16);
+
+    // extend the run greedily by decreasing powers of two
+    long current = -1L;
+    int length = 0;
+    long next;
+
+    if((next = current & (run32 >>> length)) != 0)
+    {
+      current = next;
+      length += 32;
+    }
+    if((next = current & (run16 >>> length)) != 0)
+    {
+      current = next;
+      length += 16;
+    }
+    if((next = current & (run8 >>> length)) != 0)
+    {
+      current = next;
+      length += 8;
+    }
+    if((next = current & (run4 >>> length)) != 0)
+    {
+      current = next;
+      length += 4;
+    }
+    if((next = current & (run2 >>> length)) != 0)
+    {
+      current = next;
+      length += 2;
+    }
+    if((current & (run1 >>> length)) != 0)
+    {
+      length += 1;
+    }
+
+    return length;
+  }
+
+  private void updateLeaf(int node)
+  {
+    int first = (node - leaves) * LEAF_WORDS;
+    int last = Math.min(words.length, first + LEAF_WORDS);
+
+    int len = 0;
+    int lf = 0, tf = 0, mf = 0;
+    int lt = 0, tt = 0, mt = 0;
+
+    for(int i = first; i < last; i++)
+    {
+      int bits = wordBits(i);
+      long taken = words[i];
+      // the unused high bits of a partial last word are moved out
+      long high = taken << (Long.SIZE - bits);
+
+      int wlf = Math.min(bits, Long.numberOfTrailingZeros(taken));
+      int wlt = Long.numberOfTrailingZeros(~taken);
+      int wtf = Math.min(bits, Long.numberOfLeadingZeros(high));
+      int wtt = Long.numberOfLeadingZeros(~high);
+
+      mf = Math.max(Math.max(mf, wordLongestFree[i]), tf + wlf);
+      mt = Math.max(Math.max(mt, wordLongestTaken[i]), tt + wlt);
+      lf = (lf == len) ? len + wlf : lf;
+      lt = (lt == len) ? len + wlt : lt;
+      tf = (wtf == bits) ? bits + tf : wtf;
+      tt = (wtt == bits) ? bits + tt : wtt;
+      len += bits;
+    }
+
+    int n = node * NODE_INTS;
+    nodes[n + LENGTH] = len;
+    nodes[n + LEADING_FREE] = lf;
+    nodes[n + TRAILING_FREE] = tf;
+    nodes[n + LONGEST_FREE] = mf;
+    nodes[n + LEADING_TAKEN] = lt;
+    nodes[n + TRAILING_TAKEN] = tt;
+    nodes[n + LONGEST_TAKEN] = mt;
+  }
+
+  private void updateNode(int node)
+  {
+    int n = node * NODE_INTS;
+    int l = 2 * n;
+    int r = l + NODE_INTS;
+
+    int leftLength = nodes[l + LENGTH];
+    int rightLength = nodes[r + LENGTH];
+
+    nodes[n + LENGTH] = leftLength + rightLength;
+    nodes[n + LEADING_FREE] = (nodes[l + LEADING_FREE] == leftLength)
+      ? leftLength + nodes[r + LEADING_FREE] : nodes[l + LEADING_FREE];
+    nodes[n + TRAILING_FREE] = (nodes[r + TRAILING_FREE] == rightLength)
+      ? rightLength + nodes[l + TRAILING_FREE] : nodes[r + TRAILING_FREE];
+    nodes[n + LONGEST_FREE] = Math.max(
+      Math.max(nodes[l + LONGEST_FREE], nodes[r + LONGEST_FREE]),
+      nodes[l + TRAILING_FREE] + nodes[r + LEADING_FREE]);
+    nodes[n + LEADING_TAKEN] = (nodes[l + LEADING_TAKEN] == leftLength)
+      ? leftLength + nodes[r + LEADING_TAKEN] : nodes[l + LEADING_TAKEN];
+    nodes[n + TRAILING_TAKEN] = (nodes[r + TRAILING_TAKEN] == rightLength)
+      ? rightLength + nodes[l + TRAILING_TAKEN] : nodes[r + TRAILING_TAKEN];
+    nodes[n + LONGEST_TAKEN] = Math.max(
+      Math.max(nodes[l + LONGEST_TAKEN], nodes[r + LONGEST_TAKEN]),
+      nodes[l + TRAILING_TAKEN] + nodes[r + LEADING_TAKEN]);
+  }
+
+}
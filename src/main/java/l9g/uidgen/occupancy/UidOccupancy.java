@@ -0,0 +1,66 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+/**
+ * Occupancy table of a UID space, one slot per possible UID index.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public interface UidOccupancy
+{
+  /**
+   * @return number of slots
+   */
+  long size();
+
+  boolean isTaken(long index);
+
+  /**
+   * Marks the slot as taken.
+   *
+   * @return {@code true} if the slot was free before
+   */
+  boolean take(long index);
+
+  /**
+   * Marks the slot as free.
+   *
+   * @return {@code true} if the slot was taken before
+   */
+  boolean release(long index);
+
+  /**
+   * @return the first free slot in {@code [fromIndex, size())}
+   *         or {@code -1} if there is none
+   */
+  long nextFree(long fromIndex);
+
+  /**
+   * Marks all slots as free.
+   */
+  void clear();
+
+  /**
+   * @return free and taken runs of the whole table or {@code null} if this
+   *         table does not track them
+   */
+  default RunSummary runs()
+  {
+    return null;
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.util.Arrays;
+import l9g.uidgen.occupancy.BitmapOccupancy;
+
+/**
+ * Number of taken slots per fixed-size block of a shard and the number of
+ * blocks per 10% fill step, both maintained on every take and release, so
+ * publishing the histogram is a copy of {@link #BUCKETS} counters.
+ *
+ * Not thread safe, guarded by the lock of the shard.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class BlockFill
+{
+  static final int BUCKETS = 10;
+
+  /**
+   * Smallest block, the slots of one level 1 summary word of a bitmap.
+   */
+  private static final long MIN_BLOCK_SIZE = 4096;
+
+  private static final int MAX_BLOCKS = 1 << 14;
+
+  private final long size;
+
+  private final long blockSize;
+
+  private final long[] taken;
+
+  private final int[] histogram = new int[BUCKETS];
+
+  /**
+   * @param size      number of slots of the shard
+   * @param blockSize see {@link #blockSize(long)}
+   */
+  BlockFill(long size, long blockSize)
+  {
+    this.size = size;
+    this.blockSize = blockSize;
+    this.taken = new long[(int)((size + blockSize - 1) / blockSize)];
+    clear();
+  }
+
+  /**
+   * @return a power of two of at least 4096 slots, large enough to split a
+   *         shard of {@code shardSize} slots into at most 16384 blocks
+   */
+  static long blockSize(long shardSize)
+  {
+    long blockSize = MIN_BLOCK_SIZE;
+    while(shardSize / blockSize >= MAX_BLOCKS)
+    {
+      blockSize <<= 1;
+    }
+    return blockSize;
+  }
+
+  long getBlockSize()
+  {
+    return blockSize;
+  }
+
+  private int bucket(int block, long count)
+  {
+    long length = Math.min(blockSize, size - block * blockSize);
+    return (int)Math.min(BUCKETS - 1, count * BUCKETS / length);
+  }
+
+  void take(long index)
+  {
+    int block = (int)(index / blockSize);
+    long count = taken[block]++;
+    move(bucket(block, count), bucket(block, count + 1));
+  }
+
+  void release(long index)
+  {
+    int block = (int)(index / blockSize);
+    long count = taken[block]--;
+    move(bucket(block, count), bucket(block, count - 1));
+  }
+
+  private void move(int from, int to)
+  {
+    if(from != to)
+    {
+      histogram[from]--;
+      histogram[to]++;
+    }
+  }
+
+  void clear()
+  {
+    Arrays.fill(taken, 0);
+    Arrays.fill(histogram, 0);
+    histogram[0] = taken.length;
+  }
+
+  /**
+   * Recounts all blocks after the bitmap has been replaced as a whole.
+   */
+  void rebuild(BitmapOccupancy bitmap)
+  {
+    Arrays.fill(histogram, 0);
+    for(int block = 0; block < taken.length; block++)
+    {
+      long from = block * blockSize;
+      taken[block] = bitmap.countTaken((int)from,
+        (int)Math.min(size, from + blockSize));
+      histogram[bucket(block, taken[block])]++;
+    }
+  }
+
+  /**
+   * @return number of blocks per 10% fill step, the last step includes
+   *         completely taken blocks
+   */
+  int[] histogram()
+  {
+    return histogram.clone();
+  }
+
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import l9g.uidgen.handler.LdapHandler;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Leases disjoint blocks (shards) of the UID space to this instance, so
+ * several instances can serve UIDs at the same time.
+ *
+ * The lease table is kept as a single attribute value of a directory entry,
+ * e.g. {@code "0=node-a@1760000000000 staff/5=node-b@1760000000000"} (block,
+ * owner node, expiry in epoch milliseconds). Blocks of the default pool are
+ * plain numbers, blocks of all other pools are prefixed with the pool name.
+ * It is only ever changed by a compare-and-swap modify request asserting the
+ * previously read value.
+ *
+ * A node stops allocating from its blocks a safety margin before the lease
+ * expires, even if the renewal is still pending, to allow for clock skew
+ * between the nodes and slow directory requests.
+ *
+ * UIDs handed out from a block may only be in the journal of this node and
+ * not in LDAP yet. A block this node gives up, on shutdown or because it is
+ * full, therefore stays leased to it for a quarantine time: the
+ * reservation ttl with reservations, otherwise the journal retention.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+@Component
+public class BlockLeaseManager
+{
+  private final static int MAX_CAS_RETRIES = 8;
+
+  private final LdapHandler ldapHandler;
+
+  @Getter
+  private final boolean enabled;
+
+  private final String leaseDn;
+
+  private final String leaseAttribute;
+
+  @Getter
+  private final String nodeId;
+
+  private final int numberOfBlocks;
+
+  private final long leaseDuration;
+
+  private final long safetyMargin;
+
+  private final long quarantine;
+
+  private final Map<String, BitSet> leasedBlocks = new HashMap<>();
+
+  private final Map<String, Long> leaseExpiresAt = new HashMap<>();
+
+  private final ReentrantLock leaseLock = new ReentrantLock();
+
+  public BlockLeaseManager(
+    LdapHandler ldapHandler,
+    @Value("${uidgen.lease.enabled:false}") boolean enabled,
+    @Value("${uidgen.lease.dn:}") String leaseDn,
+    @Value("${uidgen.lease.attribute:description}") String leaseAttribute,
+    @Value("${uidgen.lease.node-id:}") String nodeId,
+    @Value("${uidgen.lease.blocks:4}") int numberOfBlocks,
+    @Value("${uidgen.lease.duration:600000}") long leaseDuration,
+    @Value("${uidgen.lease.safety-margin:30000}") long safetyMargin,
+    @Value("${uidgen.reservation.enabled:false}") boolean reservationEnabled,
+    @Value("${uidgen.reservation.ttl:900000}") long reservationTtl,
+    @Value("${uidgen.journal.retention:86400000}") long journalRetention
+  )
+    throws UnknownHostException
+  {
+    this.ldapHandler = ldapHandler;
+    this.enabled = enabled;
+    this.leaseDn = leaseDn;
+    this.leaseAttribute = leaseAttribute;
+    this.nodeId = (nodeId == null || nodeId.isBlank())
+      ? InetAddress.getLocalHost().getHostName() : nodeId.trim();
+    this.numberOfBlocks = Math.max(1, numberOfBlocks);
+    this.leaseDuration = leaseDuration;
+    this.safetyMargin = Math.max(0, safetyMargin);
+    this.quarantine = reservationEnabled ? reservationTtl : journalRetention;
+
+    if(this.nodeId.matches(".*[\\s=@].*"))
+    {
+      throw new IllegalArgumentException(
+        "uidgen.lease.node-id must not contain whitespace, '=' or '@'");
+    }
+
+    log.debug("enabled={}, nodeId={}, blocks={}", enabled, this.nodeId,
+      this.numberOfBlocks);
+  }
+
+  /**
+   * Renews the leases of this node and acquires new blocks until it holds
+   * the configured number of blocks with available UIDs in the pool.
+   *
+   * @param poolName  name of the UID pool
+   * @param available number of available UIDs per block
+   *
+   * @return the blocks this node may allocate from, empty if the leases
+   *         could not be renewed and have expired
+   */
+  public BitSet renew(String poolName, long[] available)
+  {
+    leaseLock.lock();
+    try
+    {
+      try
+      {
+        for(int retry = 0; retry < MAX_CAS_RETRIES; retry++)
+        {
+          long now = System.currentTimeMillis();
+          String currentValue =
+            ldapHandler.readAttributeValue(leaseDn, leaseAttribute);
+          Map<String, Lease> leases = parse(currentValue);
+
+          BitSet blocks = new BitSet(available.length);
+          BitSet leased = leasedBlocks.getOrDefault(poolName, new BitSet());
+          List<Integer> freeBlocks = new ArrayList<>();
+
+          for(int block = 0; block < available.length; block++)
+          {
+            String key = blockKey(poolName, block);
+            Lease lease = leases.get(key);
+            if(lease != null && lease.expiresAt() <= now)
+            {
+              leases.remove(key);
+              lease = null;
+            }
+
+            if(lease != null && nodeId.equals(lease.node()))
+            {
+              if(available[block] > 0)
+              {
+                blocks.set(block);
+              }
+              else if(leased.get(block))
+              {
+                leases.put(key, quarantined(lease, now));
+              }
+            }
+            else if(lease == null && available[block] > 0)
+            {
+              freeBlocks.add(block);
+            }
+          }
+
+          // random choice keeps concurrently starting nodes apart
+          Collections.shuffle(freeBlocks);
+          for(int i = 0; i < freeBlocks.size()
+            && blocks.cardinality() < numberOfBlocks; i++)
+          {
+            blocks.set(freeBlocks.get(i));
+          }
+
+          long expiresAt = now + leaseDuration;
+          blocks.stream().forEach(
+            block -> leases.put(blockKey(poolName, block),
+              new Lease(nodeId, expiresAt)));
+
+          if(ldapHandler.compareAndSwap(
+            leaseDn, leaseAttribute, currentValue, format(leases)))
+          {
+            leasedBlocks.put(poolName, blocks);
+            leaseExpiresAt.put(poolName, expiresAt);
+            log.debug("{}: leased blocks {} until {}", poolName, blocks,
+              expiresAt);
+            return (BitSet)blocks.clone();
+          }
+        }
+
+        log.warn("lease table contended, giving up after {} retries",
+          MAX_CAS_RETRIES);
+      }
+      catch(Exception e)
+      {
+        log.error("renewing leases failed", e);
+      }
+
+      if(System.currentTimeMillis() >= getAllocationDeadline(poolName))
+      {
+        leasedBlocks.remove(poolName);
+      }
+
+      return (BitSet)leasedBlocks.getOrDefault(poolName, new BitSet()).clone();
+    }
+    finally
+    {
+      leaseLock.unlock();
+    }
+  }
+
+  /**
+   * @return epoch milliseconds from which this node must not allocate from
+   *         the blocks of the pool any more, the lease expiry minus the
+   *         safety margin
+   */
+  public long getAllocationDeadline(String poolName)
+  {
+    leaseLock.lock();
+    try
+    {
+      Long expiresAt = leaseExpiresAt.get(poolName);
+      return (expiresAt != null) ? expiresAt - safetyMargin : 0;
+    }
+    finally
+    {
+      leaseLock.unlock();
+    }
+  }
+
+  /**
+   * Returns all blocks of all pools leased by this node to the directory
+   * after their quarantine time.
+   */
+  public void release()
+  {
+    leaseLock.lock();
+    try
+    {
+      try
+      {
+        for(int retry = 0; retry < MAX_CAS_RETRIES; retry++)
+        {
+          long now = System.currentTimeMillis();
+          String currentValue =
+            ldapHandler.readAttributeValue(leaseDn, leaseAttribute);
+          Map<String, Lease> leases = parse(currentValue);
+          boolean changed = false;
+
+          for(Map.Entry<String, Lease> entry : leases.entrySet())
+          {
+            Lease lease = entry.getValue();
+            if(nodeId.equals(lease.node()) && lease.expiresAt() > now)
+            {
+              entry.setValue(quarantined(lease, now));
+              changed = true;
+            }
+          }
+
+          if( ! changed || ldapHandler.compareAndSwap(
+              leaseDn, leaseAttribute, currentValue, format(leases)))
+          {
+            leasedBlocks.clear();
+            leaseExpiresAt.clear();
+            log.info("leases released, quarantined for {} ms", quarantine);
+            return;
+          }
+        }
+      }
+      catch(Exception e)
+      {
+        log.error("releasing leases failed", e);
+      }
+    }
+    finally
+    {
+      leaseLock.unlock();
+    }
+  }
+
+  /**
+   * @return the lease of a block this node gives up, kept until UIDs
+   *         handed out from it are expected in LDAP
+   */
+  private Lease quarantined(Lease lease, long now)
+  {
+    return new Lease(nodeId, Math.max(lease.expiresAt(), now + quarantine));
+  }
+
+  private static String blockKey(String poolName, int block)
+  {
+    return UidgenConfig.DEFAULT_POOL.equals(poolName)
+      ? Integer.toString(block) : poolName + "/" + block;
+  }
+
+  private static Map<String, Lease> parse(String value)
+  {
+    Map<String, Lease> leases = new TreeMap<>();
+
+    if(value != null && ! value.isBlank())
+    {
+      for(String token : value.trim().split("\\s+"))
+      {
+        int equals = token.indexOf('=');
+        int at = token.lastIndexOf('@');
+
+        if(equals > 0 && at > equals)
+        {
+          try
+          {
+            leases.put(token.substring(0, equals),
+              new Lease(token.substring(equals + 1, at),
+                Long.parseLong(token.substring(at + 1))));
+          }
+          catch(NumberFormatException e)
+          {
+            log.warn("ignoring invalid lease: {}", token);
+          }
+        }
+        else
+        {
+          log.warn("ignoring invalid lease: {}", token);
+        }
+      }
+    }
+
+    return leases;
+  }
+
+  private static String format(Map<String, Lease> leases)
+  {
+    StringJoiner joiner = new StringJoiner(" ");
+    leases.forEach((block, lease) ->
+      joiner.add(block + "=" + lease.node() + "@" + lease.expiresAt()));
+    return joiner.toString();
+  }
+
+  private record Lease(String node, long expiresAt)
+  {
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import l9g.uidgen.occupancy.FeistelPermutation;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Walks a keyed permutation of the UID space. Key and position are kept
+ * in a small state file so a restart continues where it left off.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+class PermutationCursor
+{
+  private final static String KEY = "key";
+
+  private final static String POSITION = "position";
+
+  private final Path stateFile;
+
+  private final long key;
+
+  private final FeistelPermutation permutation;
+
+  private final AtomicLong position = new AtomicLong();
+
+  private volatile long savedPosition = -1;
+
+  private final ReentrantLock saveLock = new ReentrantLock();
+
+  /**
+   * @param configuredKey permutation key, if blank the key is read from the
+   *                      state file or a new random key is generated
+   */
+  PermutationCursor(long domainSize, String configuredKey, Path stateFile)
+  {
+    this.stateFile = stateFile;
+
+    Properties state = new Properties();
+    if(Files.isRegularFile(stateFile))
+    {
+      try(Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8))
+      {
+        state.load(reader);
+      }
+      catch(IOException e)
+      {
+        log.warn("reading permutation state failed: {}", e.getMessage());
+      }
+    }
+
+    if(configuredKey != null && ! configuredKey.isBlank())
+    {
+      key = ByteBuffer.wrap(sha256(configuredKey.trim())).getLong();
+    }
+    else if(state.getProperty(KEY) != null)
+    {
+      key = Long.parseUnsignedLong(state.getProperty(KEY), 16);
+    }
+    else
+    {
+      key = new SecureRandom().nextLong();
+      log.info("generated new permutation key");
+    }
+
+    String keyHex = Long.toHexString(key);
+    if(keyHex.equals(state.getProperty(KEY)) && state.getProperty(POSITION) != null)
+    {
+      position.set(Long.parseLong(state.getProperty(POSITION)) % domainSize);
+    }
+
+    this.permutation = new FeistelPermutation(domainSize, key);
+    log.debug("permutation position={}", position.get());
+  }
+
+  /**
+   * @return the next index of the permutation, wrapping around after the
+   *         whole UID space has been visited
+   */
+  long next()
+  {
+    long domainSize = permutation.getDomainSize();
+    long current = position.getAndUpdate(p -> (p + 1) % domainSize);
+    return permutation.permute(current);
+  }
+
+  void save()
+  {
+    saveLock.lock();
+    try
+    {
+      long current = position.get();
+
+      if(current != savedPosition)
+      {
+        Properties state = new Properties();
+        state.setProperty(KEY, Long.toHexString(key));
+        state.setProperty(POSITION, Long.toString(current));
+
+        Path tmpFile = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+
+        try
+        {
+          try(Writer writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8))
+          {
+            state.store(writer, "uidgen permutation state");
+          }
+          Files.move(tmpFile, stateFile, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+          savedPosition = current;
+        }
+        catch(IOException e)
+        {
+          log.error("writing permutation state failed", e);
+        }
+      }
+    }
+    finally
+    {
+      saveLock.unlock();
+    }
+  }
+
+  private static byte[] sha256(String text)
+  {
+    try
+    {
+      return MessageDigest.getInstance("SHA-256")
+        .digest(text.getBytes(StandardCharsets.UTF_8));
+    }
+    catch(NoSuchAlgorithmException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats UID indices as unique tag followed by the zero padded index
+ * without going through {@link String#format(String, Object...)}.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public final class UidFormatter
+{
+  private final static long[] POWERS_OF_TEN = new long[19];
+
+  static
+  {
+    POWERS_OF_TEN[0] = 1;
+    for(int i = 1; i < POWERS_OF_TEN.length; i++)
+    {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final char[] prefix;
+
+  private final byte[] prefixBytes;
+
+  private final int numberOfDigits;
+
+  public UidFormatter(String uniqueTag, int numberOfDigits)
+  {
+    this.prefix = uniqueTag.toCharArray();
+    this.prefixBytes = uniqueTag.getBytes(StandardCharsets.UTF_8);
+    this.numberOfDigits = numberOfDigits;
+  }
+
+  /**
+   * @return number of chars of a formatted UID
+   */
+  public int length()
+  {
+    return prefix.length + numberOfDigits;
+  }
+
+  /**
+   * @return number of UTF-8 bytes of a formatted UID
+   */
+  public int byteLength()
+  {
+    return prefixBytes.length + numberOfDigits;
+  }
+
+  public String getUniqueTag()
+  {
+    return new String(prefix);
+  }
+
+  public int getNumberOfDigits()
+  {
+    return numberOfDigits;
+  }
+
+  public String format(long index)
+  {
+    char[] buffer = new char[length()];
+    format(index, buffer, 0);
+    return new String(buffer);
+  }
+
+  /**
+   * Writes the UID into the buffer.
+   *
+   * @return number of chars written
+   */
+  public int format(long index, char[] buffer, int offset)
+  {
+    System.arraycopy(prefix, 0, buffer, offset, prefix.length);
+
+    int position = offset + prefix.length + numberOfDigits;
+    long value = checkIndex(index);
+
+    for(int i = 0; i < numberOfDigits; i++)
+    {
+      buffer[--position] = (char)('0' + (value % 10));
+      value /= 10;
+    }
+
+    return prefix.length + numberOfDigits;
+  }
+
+  /**
+   * Writes the UID UTF-8 encoded into the buffer.
+   *
+   * @return number of bytes written
+   */
+  public int format(long index, byte[] buffer, int offset)
+  {
+    System.arraycopy(prefixBytes, 0, buffer, offset, prefixBytes.length);
+
+    int position = offset + prefixBytes.length + numberOfDigits;
+    long value = checkIndex(index);
+
+    for(int i = 0; i < numberOfDigits; i++)
+    {
+      buffer[--position] = (byte)('0' + (value % 10));
+      value /= 10;
+    }
+
+    return prefixBytes.length + numberOfDigits;
+  }
+
+  private long checkIndex(long index)
+  {
+    if(index < 0 || (numberOfDigits < 19
+      && index >= POWERS_OF_TEN[numberOfDigits]))
+    {
+      throw new IllegalArgumentException(
+        "index " + index + " does not fit into " + numberOfDigits + " digits");
+    }
+    return index;
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read only list of UIDs backed by their indices. The UID strings are only
+ * created on {@link #get(int)}, the JSON serialization writes them straight
+ * from a reused char buffer.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@JsonSerialize(using = UidListSerializer.class)
+public class UidList extends AbstractList<String> implements RandomAccess
+{
+  private final UidFormatter formatter;
+
+  private final long[] indices;
+
+  private final int size;
+
+  private final Long reservedUntil;
+
+  public UidList(UidFormatter formatter, long[] indices, int size)
+  {
+    this(formatter, indices, size, null);
+  }
+
+  public UidList(UidFormatter formatter, long[] indices, int size,
+    Long reservedUntil)
+  {
+    this.formatter = formatter;
+    this.indices = indices;
+    this.size = size;
+    this.reservedUntil = reservedUntil;
+  }
+
+  public UidFormatter getFormatter()
+  {
+    return formatter;
+  }
+
+  /**
+   * @return expiry of the reservation in epoch milliseconds or {@code null}
+   *         if the UIDs are not reserved
+   */
+  public Long getReservedUntil()
+  {
+    return reservedUntil;
+  }
+
+  public long getIndex(int i)
+  {
+    if(i < 0 || i >= size)
+    {
+      throw new IndexOutOfBoundsException(i);
+    }
+    return indices[i];
+  }
+
+  @Override
+  public String get(int i)
+  {
+    return formatter.format(getIndex(i));
+  }
+
+  @Override
+  public int size()
+  {
+    return size;
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+
+/**
+ * Writes an {@link UidList} as JSON string array without creating a
+ * {@link String} per UID.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public class UidListSerializer extends StdSerializer<UidList>
+{
+  private static final long serialVersionUID = 4137682290711593546L;
+
+  public UidListSerializer()
+  {
+    super(UidList.class);
+  }
+
+  @Override
+  public void serialize(UidList uids, JsonGenerator generator,
+    SerializerProvider provider)
+    throws IOException
+  {
+    UidFormatter formatter = uids.getFormatter();
+    char[] buffer = new char[formatter.length()];
+    int size = uids.size();
+
+    generator.writeStartArray(uids, size);
+    for(int i = 0; i < size; i++)
+    {
+      int length = formatter.format(uids.getIndex(i), buffer, 0);
+      generator.writeString(buffer, 0, length);
+    }
+    generator.writeEndArray();
+  }
+
+}
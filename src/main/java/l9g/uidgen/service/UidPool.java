@@ -0,0 +1,956 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.LongStream;
+import l9g.uidgen.handler.AllocationJournal;
+import l9g.uidgen.handler.LdapHandler;
+import l9g.uidgen.handler.SnapshotHandler;
+import l9g.uidgen.occupancy.BitmapOccupancy;
+import l9g.uidgen.occupancy.CompressedOccupancy;
+import l9g.uidgen.occupancy.RunSummary;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * UID space of one unique tag.
+ *
+ * The UID space is split into independently locked shards. A request
+ * allocates from a randomly chosen shard and only moves on to the next
+ * shard when that one is exhausted, so concurrent requests rarely wait
+ * for each other. The per shard available counters form a striped
+ * counter of the available UIDs.
+ *
+ * Up to 9 digits the shards are backed by bitmaps, above that by
+ * compressed occupancy sets whose memory grows with the number of taken
+ * UIDs only.
+ *
+ * A reload builds a complete new set of shards on the side while the pool
+ * keeps serving from the current one, and publishes it with a single
+ * reference swap.
+ *
+ * Statistics are assembled from the statistics each shard publishes after
+ * every allocation or batch of changes, so reading them never takes a
+ * shard lock.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+public class UidPool
+{
+  @Getter
+  private final String name;
+
+  @Getter
+  private final String uniqueTag;
+
+  @Getter
+  private final int numberOfDigits;
+
+  private volatile UidShard[] shards;
+
+  private final long shardSize;
+
+  private final long blockSize;
+
+  private final boolean bitmap;
+
+  private final boolean trackRuns;
+
+  @Getter
+  private final UidFormatter formatter;
+
+  @Getter
+  private final long maxNumberOfUids;
+
+  private final SnapshotHandler snapshotHandler;
+
+  private final Path snapshotFile;
+
+  private final boolean snapshotEnabled;
+
+  private final BlockLeaseManager leaseManager;
+
+  private final AllocationJournal journal;
+
+  private final UidPrefetchBuffer prefetchBuffer;
+
+  private final PermutationCursor permutationCursor;
+
+  private final UidReservations reservations;
+
+  private final long reservationTtl;
+
+  private final LdapHandler ldapHandler;
+
+  private final UidgenConfig.Verify verify;
+
+  private final Map<String, LongAdder> allocationsByOwner =
+    new ConcurrentHashMap<>();
+
+  private volatile boolean snapshotDirty;
+
+  private final ReentrantLock snapshotLock = new ReentrantLock();
+
+  UidPool(String name, UidgenConfig.Pool poolConfig, UidgenConfig config,
+    SnapshotHandler snapshotHandler, BlockLeaseManager leaseManager,
+    AllocationJournal journal, LdapHandler ldapHandler)
+  {
+    this.name = name;
+    this.uniqueTag = poolConfig.getUniqueTag();
+    this.numberOfDigits = poolConfig.getNumberOfDigits();
+
+    log.debug("{}: uniqueTag={}, numberOfDigits={}", name, uniqueTag,
+      numberOfDigits);
+    if(numberOfDigits < 1 || numberOfDigits > 18)
+    {
+      throw new IllegalArgumentException(
+        name + ": number-of-digits must be between 1 and 18");
+    }
+    long numberOfUids = 1;
+    for(int i = 0; i < numberOfDigits; i++)
+    {
+      numberOfUids *= 10;
+    }
+    maxNumberOfUids = numberOfUids;
+    log.debug("{}: maxNumberOfUids={}", name, maxNumberOfUids);
+
+    String occupancyType = poolConfig.getOccupancy();
+    this.bitmap = "bitmap".equalsIgnoreCase(occupancyType)
+      || ("auto".equalsIgnoreCase(occupancyType) && numberOfDigits <= 9);
+    if(bitmap && numberOfDigits > 9)
+    {
+      throw new IllegalArgumentException(
+        name + ": bitmap occupancy supports at most 9 digits");
+    }
+    log.debug("{}: occupancy={}", name, bitmap ? "bitmap" : "compressed");
+
+    this.trackRuns = bitmap && config.getStatistics().isTrackRuns();
+
+    // shard sizes are multiples of 64 to keep the shard bitmaps word aligned
+    int numberOfShards = Math.max(1, config.getShards());
+    long size = (maxNumberOfUids + numberOfShards - 1) / numberOfShards;
+    this.shardSize = Math.max(64, (size + 63) & ~63L);
+    this.blockSize = BlockFill.blockSize(shardSize);
+    this.shards = newShards();
+    log.debug("{}: shards={}, shardSize={}, blockSize={}", name,
+      shards.length, shardSize, blockSize);
+
+    this.formatter = new UidFormatter(uniqueTag, numberOfDigits);
+
+    this.snapshotHandler = snapshotHandler;
+    this.snapshotFile = poolPath(snapshotHandler.getSnapshotFile());
+    this.snapshotEnabled = snapshotHandler.isEnabled() && bitmap;
+    if(snapshotHandler.isEnabled() && ! bitmap)
+    {
+      log.warn("{}: snapshots are only supported for bitmap occupancy, disabled",
+        name);
+    }
+
+    this.leaseManager = leaseManager;
+    this.journal = journal;
+    if(leaseManager.isEnabled())
+    {
+      for(UidShard shard : shards)
+      {
+        shard.setLeasedUntil(0);
+      }
+    }
+
+    log.debug("{}: allocationMode={}", name, config.getAllocationMode());
+    this.permutationCursor =
+      "permutation".equalsIgnoreCase(config.getAllocationMode())
+      ? new PermutationCursor(maxNumberOfUids, config.getPermutation().getKey(),
+        poolPath(config.getPermutation().getStateFile()))
+      : null;
+
+    UidgenConfig.Reservation reservation = config.getReservation();
+    this.reservations = reservation.isEnabled()
+      ? new UidReservations(reservation.getTick(), System.currentTimeMillis())
+      : null;
+    this.reservationTtl = reservation.getTtl();
+
+    this.ldapHandler = ldapHandler;
+    this.verify = config.getVerify();
+
+    UidgenConfig.Prefetch prefetch = config.getPrefetch();
+    this.prefetchBuffer = prefetch.isEnabled()
+      ? new UidPrefetchBuffer(prefetch.getCapacity(),
+        prefetch.getLowWaterMark(), this::allocateUidIndices,
+        this::releaseUids)
+      : null;
+  }
+
+  private UidShard[] newShards()
+  {
+    List<UidShard> shardList = new ArrayList<>();
+    for(long base = 0; base < maxNumberOfUids; base += shardSize)
+    {
+      long length = Math.min(shardSize, maxNumberOfUids - base);
+      shardList.add(new UidShard(base, bitmap
+        ? new BitmapOccupancy((int)length, trackRuns)
+        : new CompressedOccupancy(length), blockSize));
+    }
+    return shardList.toArray(UidShard[] :: new);
+  }
+
+  /**
+   * The default pool uses the configured file names, all other pools
+   * insert their name before the file extension.
+   */
+  private Path poolPath(String file)
+  {
+    if(UidgenConfig.DEFAULT_POOL.equals(name))
+    {
+      return Path.of(file);
+    }
+
+    Path path = Path.of(file);
+    String fileName = path.getFileName().toString();
+    int dot = fileName.lastIndexOf('.');
+    String poolFileName = (dot > 0)
+      ? fileName.substring(0, dot) + "-" + name + fileName.substring(dot)
+      : fileName + "-" + name;
+    return path.resolveSibling(poolFileName);
+  }
+
+  boolean isSnapshotEnabled()
+  {
+    return snapshotEnabled;
+  }
+
+  /**
+   * @return {@code true} if the UID (lower case) belongs to this pool
+   */
+  boolean matches(String uid)
+  {
+    int digits = uid.length() - uniqueTag.length();
+
+    if(digits < 1 || digits > 18
+      || ! uid.regionMatches(true, 0, uniqueTag, 0, uniqueTag.length()))
+    {
+      return false;
+    }
+
+    for(int i = uniqueTag.length(); i < uid.length(); i++)
+    {
+      char c = uid.charAt(i);
+      if(c < '0' || c > '9')
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  long parseIndex(String uid)
+  {
+    return Long.parseLong(uid.substring(uniqueTag.length()));
+  }
+
+  /**
+   * Called once the table has been loaded.
+   */
+  void start()
+  {
+    if(leaseManager.isEnabled())
+    {
+      renewLeases();
+    }
+
+    if(permutationCursor != null)
+    {
+      permutationCursor.save();
+    }
+
+    if(prefetchBuffer != null)
+    {
+      prefetchBuffer.start();
+    }
+  }
+
+  void stop()
+  {
+    if(prefetchBuffer != null)
+    {
+      releaseUids(prefetchBuffer.stop());
+    }
+
+    if(leaseManager.isEnabled())
+    {
+      for(UidShard shard : shards)
+      {
+        shard.setLeasedUntil(0);
+      }
+    }
+
+    saveState();
+  }
+
+  void saveState()
+  {
+    if(snapshotEnabled)
+    {
+      writeSnapshot();
+    }
+
+    if(permutationCursor != null)
+    {
+      permutationCursor.save();
+    }
+  }
+
+  void renewLeases()
+  {
+    if(leaseManager.isEnabled())
+    {
+      UidShard[] current = shards;
+      long[] available = new long[current.length];
+      for(int i = 0; i < current.length; i++)
+      {
+        available[i] = current[i].getAvailable();
+      }
+
+      BitSet leasedShards = leaseManager.renew(name, available);
+      long deadline = leaseManager.getAllocationDeadline(name);
+
+      // a retired shard passes the deadline on to its successor
+      for(int i = 0; i < current.length; i++)
+      {
+        current[i].setLeasedUntil(leasedShards.get(i) ? deadline : 0);
+      }
+      log.info("{}: leased shards: {}", name, leasedShards);
+    }
+  }
+
+  /**
+   * @return number of UIDs not yet handed out, including prefetched ones
+   */
+  public long getAvailableUids()
+  {
+    long availableUids = (prefetchBuffer != null) ? prefetchBuffer.size() : 0;
+    for(UidShard shard : shards)
+    {
+      availableUids += shard.getAvailable();
+    }
+    return availableUids;
+  }
+
+  /**
+   * Assembled from the statistics published by the shards, each shard is
+   * consistent in itself. Prefetched UIDs count as available but are taken
+   * in the table, the runs refer to the table.
+   */
+  public UidStatistics getStatistics()
+  {
+    long numberOfUids = 0;
+    long taken = 0;
+    int[] fillHistogram = new int[BlockFill.BUCKETS];
+    RunSummary runs = null;
+
+    for(UidShard shard : shards)
+    {
+      UidShard.Statistics statistics = shard.getStatistics();
+      numberOfUids += statistics.size();
+      taken += statistics.taken();
+      for(int i = 0; i < fillHistogram.length; i++)
+      {
+        fillHistogram[i] += statistics.fillHistogram()[i];
+      }
+
+      if(statistics.runs() != null)
+      {
+        runs = (runs == null) ? statistics.runs()
+          : runs.append(statistics.runs());
+      }
+    }
+
+    long free = numberOfUids - taken;
+    long prefetched = (prefetchBuffer != null) ? prefetchBuffer.size() : 0;
+
+    Map<String, Long> allocations = new TreeMap<>();
+    allocationsByOwner.forEach(
+      (owner, count) -> allocations.put(owner, count.sum()));
+
+    Long longestFreeRun = null;
+    Long longestTakenRun = null;
+    Double fragmentation = null;
+
+    if(runs != null)
+    {
+      longestFreeRun = runs.longestFree();
+      longestTakenRun = runs.longestTaken();
+      // 0 while all free UIDs form a single run, towards 1 when scattered
+      fragmentation = (free > 0)
+        ? 1.0 - (double)runs.longestFree() / free : 0.0;
+    }
+
+    return new UidStatistics(name, numberOfUids, taken - prefetched,
+      free + prefetched, blockSize, fillHistogram, longestFreeRun,
+      longestTakenRun, fragmentation, allocations);
+  }
+
+  /**
+   * Starts building a new table on the side, the current table keeps
+   * serving and records every UID it hands out until the reload is
+   * published or aborted.
+   */
+  Reload beginReload()
+  {
+    return new Reload();
+  }
+
+  boolean loadSnapshot()
+  {
+    int takenSlots = snapshotHandler.read(snapshotFile, uniqueTag,
+      (int)maxNumberOfUids, wordCount(), this::readWords);
+
+    if(takenSlots < 0)
+    {
+      for(UidShard shard : shards)
+      {
+        shard.clear();
+      }
+      return false;
+    }
+
+    log.debug("{}: availableUids: {}", name, getAvailableUids());
+    return true;
+  }
+
+  /**
+   * Called once all UIDs found in LDAP have been taken on top of the loaded
+   * snapshot. UIDs taken in the snapshot but not (yet) found in LDAP are
+   * kept, they may have been handed out before the last shutdown.
+   *
+   * @param missing number of UIDs found in LDAP but missing in the snapshot
+   */
+  void snapshotVerified(int missing)
+  {
+    log.info("{}: snapshot verified, {} UIDs missing in snapshot", name,
+      missing);
+  }
+
+  private void writeSnapshot()
+  {
+    snapshotLock.lock();
+    try
+    {
+      if(snapshotDirty)
+      {
+        snapshotDirty = false;
+        try
+        {
+          snapshotHandler.write(snapshotFile, uniqueTag, (int)maxNumberOfUids,
+            wordCount(), this::writeWords);
+        }
+        catch(IOException e)
+        {
+          snapshotDirty = true;
+          log.error("{}: writing snapshot failed", name, e);
+        }
+      }
+    }
+    finally
+    {
+      snapshotLock.unlock();
+    }
+  }
+
+  private int wordCount()
+  {
+    int wordCount = 0;
+    for(UidShard shard : shards)
+    {
+      wordCount += shard.wordCount();
+    }
+    return wordCount;
+  }
+
+  private int writeWords(LongBuffer buffer)
+  {
+    int takenSlots = 0;
+    for(UidShard shard : shards)
+    {
+      takenSlots += shard.writeWords(buffer);
+    }
+    return takenSlots;
+  }
+
+  private int readWords(LongBuffer buffer)
+  {
+    int takenSlots = 0;
+    for(UidShard shard : shards)
+    {
+      takenSlots += shard.readWords(buffer);
+    }
+    return takenSlots;
+  }
+
+
+  /**
+   * Marks the UID index as taken.
+   *
+   * @return {@code true} if it was available before
+   */
+  boolean takeUid(long uidIndex)
+  {
+    if(uidIndex < 0 || uidIndex >= maxNumberOfUids)
+    {
+      log.warn("{}: UID index out of range: {}", name, uidIndex);
+      return false;
+    }
+
+    UidShard shard = shardOf(uidIndex);
+    if(shard.take(uidIndex))
+    {
+      shard.publishStatistics();
+      snapshotDirty = true;
+      return true;
+    }
+
+    return false;
+  }
+
+  private UidShard shardOf(long uidIndex)
+  {
+    return shards[(int)(uidIndex / shardSize)];
+  }
+
+  private void releaseUids(long[] uidIndices)
+  {
+    for(long uidIndex : uidIndices)
+    {
+      shardOf(uidIndex).release(uidIndex);
+    }
+
+    if(uidIndices.length > 0)
+    {
+      publishStatistics();
+      snapshotDirty = true;
+    }
+  }
+
+  private void publishStatistics()
+  {
+    for(UidShard shard : shards)
+    {
+      shard.publishStatistics();
+    }
+  }
+
+  /**
+   * @param owner owner of the bearer token, counted in the statistics
+   */
+  public UidList findUids(int numberOfUids, String owner)
+  {
+    long[] uidIndices =
+      new long[(int)Math.max(0, Math.min(numberOfUids, getAvailableUids()))];
+    int allocated = 0;
+
+    if(prefetchBuffer != null)
+    {
+      allocated = prefetchBuffer.take(uidIndices, 0, uidIndices.length);
+    }
+
+    allocated += allocateUidIndices(
+      uidIndices, allocated, uidIndices.length - allocated);
+
+    if(verify.isEnabled())
+    {
+      allocated = verifyUidIndices(uidIndices, allocated);
+    }
+
+    try
+    {
+      journal.append(name, uidIndices, allocated);
+    }
+    catch(IOException e)
+    {
+      // never hand out UIDs which would be lost by a restart
+      releaseUids(Arrays.copyOf(uidIndices, allocated));
+      throw new UncheckedIOException("writing allocation journal failed", e);
+    }
+
+    if(owner != null && allocated > 0)
+    {
+      allocationsByOwner.computeIfAbsent(owner, o -> new LongAdder())
+        .add(allocated);
+    }
+
+    if(reservations != null)
+    {
+      long reservedUntil = System.currentTimeMillis() + reservationTtl;
+      reservations.reserve(uidIndices, allocated, reservedUntil);
+      return new UidList(formatter, uidIndices, allocated, reservedUntil);
+    }
+
+    return new UidList(formatter, uidIndices, allocated);
+  }
+
+  /**
+   * Checks the allocated UIDs against the directory, the table may be
+   * stale. UIDs found there stay taken and are replaced by new candidates,
+   * which are checked in the next round.
+   *
+   * @return number of verified UIDs, moved to the front of
+   *         {@code uidIndices}
+   */
+  private int verifyUidIndices(long[] uidIndices, int count)
+  {
+    int verified = 0;
+    int candidates = count;
+
+    try
+    {
+      for(int round = 0; round < verify.getMaxRounds()
+        && candidates > verified; round++)
+      {
+        int first = verified;
+        List<String> uids = new ArrayList<>(candidates - first);
+        for(int i = first; i < candidates; i++)
+        {
+          uids.add(formatter.format(uidIndices[i]).toLowerCase());
+        }
+
+        Set<String> existingUids = ldapHandler.findExistingUids(uids);
+
+        for(int i = first; i < candidates; i++)
+        {
+          if( ! existingUids.contains(uids.get(i - first)))
+          {
+            uidIndices[verified++] = uidIndices[i];
+          }
+        }
+
+        if( ! existingUids.isEmpty())
+        {
+          log.warn("{}: {} UIDs already exist in LDAP, marked as taken",
+            name, existingUids.size());
+        }
+
+        candidates = verified
+          + allocateUidIndices(uidIndices, verified, count - verified);
+      }
+    }
+    catch(Exception e)
+    {
+      releaseUids(Arrays.copyOf(uidIndices, candidates));
+      throw new UidVerificationException(name, e);
+    }
+
+    // candidates left after the last round are not handed out unchecked
+    releaseUids(Arrays.copyOfRange(uidIndices, verified, candidates));
+    return verified;
+  }
+
+  /**
+   * Confirms the reservations of the given UIDs, the UIDs stay taken.
+   *
+   * @return the confirmed UIDs, UIDs of other pools and expired or unknown
+   *         reservations are left out
+   */
+  public List<String> confirmUids(List<String> uids)
+  {
+    List<String> confirmed = new ArrayList<>();
+
+    if(reservations != null)
+    {
+      for(String uid : uids)
+      {
+        String value = (uid != null) ? uid.trim() : "";
+        if(value.length() == formatter.length() && matches(value)
+          && reservations.confirm(parseIndex(value)))
+        {
+          confirmed.add(value);
+        }
+      }
+    }
+
+    return confirmed;
+  }
+
+  /**
+   * Called for every UID found in LDAP, the entry exists so the
+   * reservation is fulfilled.
+   */
+  void confirmReservation(long uidIndex)
+  {
+    if(reservations != null)
+    {
+      reservations.confirm(uidIndex);
+    }
+  }
+
+  /**
+   * With reservations a journal record older than the ttl is skipped on
+   * replay: each of its UIDs has either been confirmed and is found in
+   * LDAP, or its reservation expired and the UID went back to the pool.
+   *
+   * @param createdAt epoch milliseconds the UIDs were handed out
+   */
+  boolean isJournaledUidOutstanding(long createdAt, long now)
+  {
+    return reservations == null || createdAt + reservationTtl > now;
+  }
+
+  /**
+   * Reserves UIDs replayed from the journal after a restart again until
+   * their original deadline, unless a scan finds them in LDAP.
+   */
+  void restoreReservations(long[] uidIndices, long createdAt)
+  {
+    if(reservations != null)
+    {
+      reservations.reserve(uidIndices, uidIndices.length,
+        createdAt + reservationTtl);
+    }
+  }
+
+  /**
+   * Returns all UIDs of expired reservations to the pool.
+   */
+  void expireReservations(long now)
+  {
+    if(reservations != null)
+    {
+      long[] expired = reservations.expire(now);
+      if(expired.length > 0)
+      {
+        releaseUids(expired);
+        log.info("{}: {} reservations expired", name, expired.length);
+      }
+    }
+  }
+
+  private int allocateUidIndices(long[] uidIndices, int offset, int count)
+  {
+    if(permutationCursor != null)
+    {
+      return allocatePermutedUidIndices(uidIndices, offset, count);
+    }
+
+    UidShard[] current = shards;
+    int allocated = 0;
+    int start = ThreadLocalRandom.current().nextInt(current.length);
+
+    for(int i = 0; i < current.length && allocated < count; i++)
+    {
+      UidShard shard = current[(start + i) % current.length];
+      if(shard.isLeased() && shard.getAvailable() > 0)
+      {
+        allocated += shard.allocate(
+          uidIndices, offset + allocated, count - allocated);
+      }
+    }
+
+    if(allocated > 0)
+    {
+      snapshotDirty = true;
+    }
+
+    return allocated;
+  }
+
+  /**
+   * Follows the permutation cursor and takes every visited index which is
+   * still free, so no probe chains build up while the pool fills.
+   */
+  private int allocatePermutedUidIndices(long[] uidIndices, int offset, int count)
+  {
+    int allocated = 0;
+    long steps = 0;
+
+    // bounded by one full walk of the UID space
+    while(allocated < count && steps < maxNumberOfUids)
+    {
+      if((steps & 63) == 0 && availableInLeasedShards() == 0)
+      {
+        break;
+      }
+      steps++;
+
+      long uidIndex = permutationCursor.next();
+      UidShard shard = shardOf(uidIndex);
+
+      if(shard.isLeased() && shard.take(uidIndex))
+      {
+        uidIndices[offset + allocated] = uidIndex;
+        allocated++;
+      }
+    }
+
+    if(allocated > 0)
+    {
+      publishStatistics();
+      snapshotDirty = true;
+    }
+
+    return allocated;
+  }
+
+  private long availableInLeasedShards()
+  {
+    long available = 0;
+    for(UidShard shard : shards)
+    {
+      if(shard.isLeased())
+      {
+        available += shard.getAvailable();
+      }
+    }
+    return available;
+  }
+
+  /**
+   * A table being rebuilt from a full scan while the pool keeps serving.
+   */
+  class Reload
+  {
+    private final UidShard[] staging = newShards();
+
+    private final UidShard[] current = shards;
+
+    /**
+     * UIDs handed out by the current table meanwhile, one recording per
+     * shard, each guarded by the lock of its shard.
+     */
+    private final LongStream.Builder[] recorded =
+      new LongStream.Builder[current.length];
+
+    /**
+     * UIDs handed out of the prefetch buffer meanwhile, they may have been
+     * allocated before the reload began and are not recorded by the shards,
+     * guarded by the lock of the buffer.
+     */
+    private final LongStream.Builder dequeued = LongStream.builder();
+
+    private Reload()
+    {
+      for(int i = 0; i < current.length; i++)
+      {
+        recorded[i] = LongStream.builder();
+        current[i].setRecorder(recorded[i]);
+      }
+
+      if(prefetchBuffer != null)
+      {
+        prefetchBuffer.setRecorder(dequeued);
+      }
+    }
+
+    /**
+     * Marks the UID index as taken in the new table.
+     */
+    void take(long uidIndex)
+    {
+      if(uidIndex < 0 || uidIndex >= maxNumberOfUids)
+      {
+        log.warn("{}: UID index out of range: {}", name, uidIndex);
+        return;
+      }
+
+      staging[(int)(uidIndex / shardSize)].take(uidIndex);
+    }
+
+    /**
+     * Replays the UIDs handed out during the reload onto the new table and
+     * swaps it in. Allocations wait for the swap only, never for the scan.
+     */
+    void publish()
+    {
+      for(UidShard shard : current)
+      {
+        shard.lock();
+      }
+      try
+      {
+        // prefetched UIDs have never been handed out, the buffer is
+        // refilled from the new table
+        long[] prefetched = (prefetchBuffer != null)
+          ? prefetchBuffer.clear() : new long[0];
+        Arrays.sort(prefetched);
+
+        // clearing has detached the recorder
+        dequeued.build().forEach(this::take);
+
+        for(LongStream.Builder builder : recorded)
+        {
+          builder.build()
+            .filter(uidIndex -> Arrays.binarySearch(prefetched, uidIndex) < 0)
+            .forEach(this::take);
+        }
+
+        if(reservations != null)
+        {
+          // outstanding reservations are released on expiry only
+          for(long uidIndex : reservations.indices())
+          {
+            take(uidIndex);
+          }
+        }
+
+        for(int i = 0; i < current.length; i++)
+        {
+          staging[i].publishStatistics();
+          current[i].retire(staging[i]);
+        }
+        shards = staging;
+      }
+      finally
+      {
+        for(int i = current.length - 1; i >= 0; i--)
+        {
+          current[i].unlock();
+        }
+      }
+
+      snapshotDirty = true;
+      log.debug("{}: availableUids: {}", name, getAvailableUids());
+    }
+
+    void abort()
+    {
+      for(UidShard shard : current)
+      {
+        shard.setRecorder(null);
+      }
+
+      if(prefetchBuffer != null)
+      {
+        prefetchBuffer.setRecorder(null);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded ring buffer of already allocated UID indices, refilled by a
+ * background thread whenever it drops below the low-water mark.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Slf4j
+class UidPrefetchBuffer
+{
+  private final static int REFILL_CHUNK_SIZE = 1000;
+
+  @FunctionalInterface
+  interface Allocator
+  {
+    /**
+     * Allocates up to {@code count} UIDs into {@code target}.
+     *
+     * @return number of UIDs allocated
+     */
+    int allocate(long[] target, int offset, int count);
+  }
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final long[] ring;
+
+  private final int lowWaterMark;
+
+  private final Allocator allocator;
+
+  /**
+   * Returns UID indices which have been allocated but never buffered.
+   */
+  private final Consumer<long[]> releaser;
+
+  private final Semaphore refillSignal = new Semaphore(0);
+
+  private int head;
+
+  /**
+   * Incremented by {@link #clear()}, chunks allocated before are dropped.
+   */
+  private int generation;
+
+  private volatile int size;
+
+  /**
+   * Records every UID index handed out while a reload is in progress,
+   * guarded by the lock.
+   */
+  private LongConsumer recorder;
+
+  private volatile Thread fillerThread;
+
+  UidPrefetchBuffer(int capacity, int lowWaterMark, Allocator allocator,
+    Consumer<long[]> releaser)
+  {
+    this.ring = new long[Math.max(1, capacity)];
+    this.lowWaterMark = Math.min(Math.max(1, lowWaterMark), ring.length);
+    this.allocator = allocator;
+    this.releaser = releaser;
+  }
+
+  void start()
+  {
+    Thread thread = new Thread(this::fill, "uid-prefetch");
+    thread.setDaemon(true);
+    fillerThread = thread;
+    thread.start();
+    refillSignal.release();
+  }
+
+  /**
+   * Stops the filler thread and removes all buffered UIDs.
+   *
+   * @return the UID indices which have not been handed out
+   */
+  long[] stop()
+  {
+    Thread thread = fillerThread;
+    fillerThread = null;
+
+    if(thread != null)
+    {
+      thread.interrupt();
+      try
+      {
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+      }
+      catch(InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    return clear();
+  }
+
+  /**
+   * Removes all buffered UIDs, detaches the recorder and triggers a refill.
+   *
+   * @return the UID indices which have not been handed out
+   */
+  long[] clear()
+  {
+    lock.lock();
+    try
+    {
+      long[] indices = new long[size];
+      remove(indices, 0, size);
+      recorder = null;
+      generation++;
+      refillSignal.release();
+      return indices;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Moves up to {@code count} buffered UID indices into {@code target}.
+   *
+   * @return number of UID indices taken
+   */
+  int take(long[] target, int offset, int count)
+  {
+    int taken;
+
+    lock.lock();
+    try
+    {
+      taken = remove(target, offset, count);
+
+      if(recorder != null)
+      {
+        for(int i = offset; i < offset + taken; i++)
+        {
+          recorder.accept(target[i]);
+        }
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    if(size < lowWaterMark)
+    {
+      refillSignal.release();
+    }
+
+    return taken;
+  }
+
+  /**
+   * Called with the lock held.
+   */
+  private int remove(long[] target, int offset, int count)
+  {
+    int removed = Math.min(count, size);
+    int first = Math.min(removed, ring.length - head);
+    System.arraycopy(ring, head, target, offset, first);
+    System.arraycopy(ring, 0, target, offset + first, removed - first);
+    head = (head + removed) % ring.length;
+    size -= removed;
+    return removed;
+  }
+
+  int size()
+  {
+    return size;
+  }
+
+  void setRecorder(LongConsumer recorder)
+  {
+    lock.lock();
+    try
+    {
+      this.recorder = recorder;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private int generation()
+  {
+    lock.lock();
+    try
+    {
+      return generation;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private boolean put(long[] source, int count, int expectedGeneration)
+  {
+    lock.lock();
+    try
+    {
+      if(generation != expectedGeneration)
+      {
+        return false;
+      }
+      int tail = (head + size) % ring.length;
+      int first = Math.min(count, ring.length - tail);
+      System.arraycopy(source, 0, ring, tail, first);
+      System.arraycopy(source, first, ring, 0, count - first);
+      size += count;
+      return true;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private void fill()
+  {
+    log.debug("prefetch filler started, capacity={}, lowWaterMark={}",
+      ring.length, lowWaterMark);
+
+    long[] chunk = new long[Math.min(ring.length, REFILL_CHUNK_SIZE)];
+
+    while(fillerThread == Thread.currentThread())
+    {
+      try
+      {
+        // the timed wait retries a refill which found no free UIDs
+        refillSignal.tryAcquire(1, TimeUnit.SECONDS);
+        refillSignal.drainPermits();
+
+        if(size >= lowWaterMark)
+        {
+          continue;
+        }
+
+        int missing;
+        while(fillerThread == Thread.currentThread()
+          && (missing = ring.length - size) > 0)
+        {
+          int count = Math.min(missing, chunk.length);
+          int chunkGeneration = generation();
+          int allocated = allocator.allocate(chunk, 0, count);
+
+          // only this thread adds, so the ring cannot overflow
+          if( ! put(chunk, allocated, chunkGeneration))
+          {
+            // table has been reinitialized meanwhile, the UIDs have been
+            // carried over as taken and would leak
+            releaser.accept(Arrays.copyOf(chunk, allocated));
+            continue;
+          }
+
+          if(allocated < count)
+          {
+            break; // no more available UIDs
+          }
+        }
+      }
+      catch(InterruptedException e)
+      {
+        break;
+      }
+      catch(RuntimeException e)
+      {
+        log.error("prefetching UIDs failed", e);
+      }
+    }
+
+    log.debug("prefetch filler stopped");
+  }
+
+}
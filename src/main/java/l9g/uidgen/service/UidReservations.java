@@ -0,0 +1,281 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Handed out but not yet confirmed UIDs of one pool.
+ *
+ * Expiry is driven by a hierarchical timing wheel of four levels with 64
+ * slots each. Level {@code k} covers {@code 64^(k+1)} ticks; an entry is
+ * moved one level down whenever the lower level wraps around, so reserving,
+ * confirming and expiring cost O(1) per UID regardless of the number of
+ * outstanding reservations.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class UidReservations
+{
+  private final static int SLOT_BITS = 6;
+
+  private final static int SLOTS = 1 << SLOT_BITS;
+
+  private final static int SLOT_MASK = SLOTS - 1;
+
+  private final static int LEVELS = 4;
+
+  private final static long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Map<Long, Node> reservations = new HashMap<>();
+
+  /**
+   * Circular lists with sentinel heads, wheel[level][slot].
+   */
+  private final Node[][] wheel = new Node[LEVELS][SLOTS];
+
+  private final long tickMillis;
+
+  private long currentTick;
+
+  UidReservations(long tickMillis, long now)
+  {
+    this.tickMillis = Math.max(1, tickMillis);
+    this.currentTick = now / this.tickMillis;
+
+    for(Node[] slots : wheel)
+    {
+      for(int i = 0; i < SLOTS; i++)
+      {
+        slots[i] = new Node(-1, 0);
+      }
+    }
+  }
+
+  int size()
+  {
+    lock.lock();
+    try
+    {
+      return reservations.size();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reserves the UID indices until {@code expiresAt} (epoch milliseconds).
+   */
+  void reserve(long[] uidIndices, int count, long expiresAt)
+  {
+    long deadlineTick = (expiresAt + tickMillis - 1) / tickMillis;
+
+    lock.lock();
+    try
+    {
+      for(int i = 0; i < count; i++)
+      {
+        Node node = new Node(uidIndices[i], deadlineTick);
+        Node previous = reservations.put(node.uidIndex, node);
+        if(previous != null)
+        {
+          previous.unlink();
+        }
+        schedule(node);
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return {@code true} if the UID index was reserved
+   */
+  boolean confirm(long uidIndex)
+  {
+    lock.lock();
+    try
+    {
+      Node node = reservations.remove(uidIndex);
+      if(node != null)
+      {
+        node.unlink();
+        return true;
+      }
+      return false;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return all reserved UID indices
+   */
+  long[] indices()
+  {
+    lock.lock();
+    try
+    {
+      return reservations.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Advances the wheel up to {@code now} and removes all due reservations.
+   *
+   * @return UID indices of the expired reservations
+   */
+  long[] expire(long now)
+  {
+    long nowTick = now / tickMillis;
+    long[] expired = new long[16];
+    int count = 0;
+
+    lock.lock();
+    try
+    {
+      while(currentTick < nowTick)
+      {
+        currentTick++;
+
+        // cascade top down, so entries may fall through several levels
+        for(int level = LEVELS - 1; level > 0; level--)
+        {
+          if((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0)
+          {
+            cascade(level);
+          }
+        }
+
+        Node head = wheel[0][(int)(currentTick & SLOT_MASK)];
+        Node node = head.next;
+        while(node != head)
+        {
+          Node next = node.next;
+          node.unlink();
+          if(node.deadlineTick > currentTick)
+          {
+            // clamped to the wheel range when reserved
+            schedule(node);
+          }
+          else
+          {
+            reservations.remove(node.uidIndex);
+            if(count == expired.length)
+            {
+              expired = Arrays.copyOf(expired, count * 2);
+            }
+            expired[count++] = node.uidIndex;
+          }
+          node = next;
+        }
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    return Arrays.copyOf(expired, count);
+  }
+
+  private void cascade(int level)
+  {
+    int slot = (int)((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    Node head = wheel[level][slot];
+    Node node = head.next;
+    while(node != head)
+    {
+      Node next = node.next;
+      node.unlink();
+      if(node.deadlineTick <= currentTick)
+      {
+        // due in the current tick, whose level 0 slot is processed next
+        wheel[0][(int)(currentTick & SLOT_MASK)].append(node);
+      }
+      else
+      {
+        schedule(node);
+      }
+      node = next;
+    }
+  }
+
+  private void schedule(Node node)
+  {
+    long tick = Math.max(node.deadlineTick, currentTick + 1);
+    long delta = Math.min(tick - currentTick, MAX_DELTA);
+    tick = currentTick + delta;
+
+    int level = 0;
+    while(delta >= (1L << (SLOT_BITS * (level + 1))))
+    {
+      level++;
+    }
+
+    wheel[level][(int)((tick >>> (SLOT_BITS * level)) & SLOT_MASK)]
+      .append(node);
+  }
+
+  private static final class Node
+  {
+    private final long uidIndex;
+
+    private final long deadlineTick;
+
+    private Node previous = this;
+
+    private Node next = this;
+
+    private Node(long uidIndex, long deadlineTick)
+    {
+      this.uidIndex = uidIndex;
+      this.deadlineTick = deadlineTick;
+    }
+
+    private void append(Node node)
+    {
+      node.previous = previous;
+      node.next = this;
+      previous.next = node;
+      previous = node;
+    }
+
+    private void unlink()
+    {
+      previous.next = next;
+      next.previous = previous;
+      previous = this;
+      next = this;
+    }
+  }
+
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.nio.LongBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import l9g.uidgen.occupancy.BitmapOccupancy;
+import l9g.uidgen.occupancy.RunSummary;
+import l9g.uidgen.occupancy.UidOccupancy;
+
+/**
+ * Independently locked, contiguous part of the UID space.
+ *
+ * When a reload publishes a new table, the old shard is retired and
+ * forwards all operations to its successor, so callers which still hold a
+ * reference to the old table never allocate from stale data.
+ *
+ * The shard publishes an immutable {@link Statistics} while holding the
+ * lock, after every allocation and otherwise on
+ * {@link #publishStatistics()} at the end of a batch of changes, readers
+ * get a consistent view of the shard without locking.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class UidShard
+{
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final long base;
+
+  private final UidOccupancy occupancy;
+
+  private volatile long available;
+
+  /**
+   * Allocations stop at this point in time (epoch milliseconds), the lease
+   * deadline of the block or {@code Long.MAX_VALUE} without leases.
+   */
+  private volatile long leasedUntil = Long.MAX_VALUE;
+
+  /**
+   * Records every taken UID index while a reload is in progress, guarded
+   * by the lock.
+   */
+  private LongConsumer recorder;
+
+  private volatile UidShard successor;
+
+  private volatile Statistics statistics;
+
+  /**
+   * Changed since the last publication, guarded by the lock.
+   */
+  private boolean statisticsChanged;
+
+  /**
+   * Taken slots per block, guarded by the lock.
+   */
+  private final BlockFill blockFill;
+
+  /**
+   * @param fillHistogram number of blocks per 10% fill step
+   * @param runs          free and taken runs or {@code null} if not tracked
+   */
+  record Statistics(long base, long size, long taken, int[] fillHistogram,
+    RunSummary runs)
+  {
+  }
+
+  /**
+   * @param blockSize slots per block of the fill histogram
+   */
+  UidShard(long base, UidOccupancy occupancy, long blockSize)
+  {
+    this.base = base;
+    this.occupancy = occupancy;
+    this.available = occupancy.size();
+    this.blockFill = new BlockFill(occupancy.size(), blockSize);
+    updateStatistics();
+  }
+
+  long getBase()
+  {
+    return base;
+  }
+
+  long size()
+  {
+    return occupancy.size();
+  }
+
+  long getAvailable()
+  {
+    return available;
+  }
+
+  Statistics getStatistics()
+  {
+    return statistics;
+  }
+
+  /**
+   * Publishes the statistics if the table has been changed by
+   * {@link #take(long)} or {@link #release(long)} since.
+   */
+  void publishStatistics()
+  {
+    lock.lock();
+    try
+    {
+      if(statisticsChanged)
+      {
+        updateStatistics();
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Called with the lock held.
+   */
+  private void updateStatistics()
+  {
+    statisticsChanged = false;
+    statistics = new Statistics(base, occupancy.size(),
+      occupancy.size() - available, blockFill.histogram(),
+      occupancy.runs());
+  }
+
+  /**
+   * @return {@code false} if another instance owns this shard
+   */
+  boolean isLeased()
+  {
+    return System.currentTimeMillis() < leasedUntil;
+  }
+
+  /**
+   * @param leasedUntil deadline for allocations in epoch milliseconds,
+   *                    0 if the shard is not leased
+   */
+  void setLeasedUntil(long leasedUntil)
+  {
+    this.leasedUntil = leasedUntil;
+
+    UidShard next = successor;
+    if(next != null)
+    {
+      next.setLeasedUntil(leasedUntil);
+    }
+  }
+
+  void setRecorder(LongConsumer recorder)
+  {
+    lock.lock();
+    try
+    {
+      this.recorder = recorder;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Forwards all further operations to the successor, the caller must hold
+   * the lock.
+   */
+  void retire(UidShard successor)
+  {
+    this.recorder = null;
+    this.successor = successor;
+    successor.setLeasedUntil(leasedUntil);
+  }
+
+  void lock()
+  {
+    lock.lock();
+  }
+
+  void unlock()
+  {
+    lock.unlock();
+  }
+
+  /**
+   * Allocates up to {@code count} free UIDs, each searched from a random
+   * position inside this shard.
+   *
+   * @return number of UIDs stored into {@code target} starting at
+   *         {@code offset}
+   */
+  int allocate(long[] target, int offset, int count)
+  {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int allocated = 0;
+    UidShard next;
+
+    lock.lock();
+    try
+    {
+      next = successor;
+      // the lease may expire before the next renewal revokes it
+      boolean leased = isLeased();
+      while(next == null && leased && allocated < count && available > 0)
+      {
+        long index = occupancy.nextFree(random.nextLong(occupancy.size()));
+
+        if(index < 0)
+        {
+          index = occupancy.nextFree(0);
+        }
+
+        occupancy.take(index);
+        blockFill.take(index);
+        available--;
+        target[offset + allocated] = base + index;
+        allocated++;
+
+        if(recorder != null)
+        {
+          recorder.accept(base + index);
+        }
+      }
+
+      if(allocated > 0)
+      {
+        updateStatistics();
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    return (next != null) ? next.allocate(target, offset, count) : allocated;
+  }
+
+  /**
+   * Marks the global UID index as taken.
+   *
+   * @return {@code true} if it was free before
+   */
+  boolean take(long index)
+  {
+    UidShard next;
+
+    lock.lock();
+    try
+    {
+      next = successor;
+      if(next == null)
+      {
+        if(occupancy.take(index - base))
+        {
+          blockFill.take(index - base);
+          available--;
+          if(recorder != null)
+          {
+            recorder.accept(index);
+          }
+          statisticsChanged = true;
+          return true;
+        }
+        return false;
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    return next.take(index);
+  }
+
+  /**
+   * Marks the global UID index as free.
+   *
+   * @return {@code true} if it was taken before
+   */
+  boolean release(long index)
+  {
+    UidShard next;
+
+    lock.lock();
+    try
+    {
+      next = successor;
+      if(next == null)
+      {
+        if(occupancy.release(index - base))
+        {
+          blockFill.release(index - base);
+          available++;
+          statisticsChanged = true;
+          return true;
+        }
+        return false;
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    return next.release(index);
+  }
+
+  void clear()
+  {
+    lock.lock();
+    try
+    {
+      occupancy.clear();
+      blockFill.clear();
+      available = occupancy.size();
+      updateStatistics();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  boolean isBitmap()
+  {
+    return occupancy instanceof BitmapOccupancy;
+  }
+
+  int wordCount()
+  {
+    return bitmap().wordCount();
+  }
+
+  /**
+   * @return number of taken slots written
+   */
+  int writeWords(LongBuffer buffer)
+  {
+    lock.lock();
+    try
+    {
+      bitmap().writeWords(buffer);
+      return (int)(occupancy.size() - available);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return number of taken slots read
+   */
+  int readWords(LongBuffer buffer)
+  {
+    lock.lock();
+    try
+    {
+      int taken = bitmap().readWords(buffer);
+      blockFill.rebuild(bitmap());
+      available = occupancy.size() - taken;
+      updateStatistics();
+      return taken;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private BitmapOccupancy bitmap()
+  {
+    if(occupancy instanceof BitmapOccupancy bitmap)
+    {
+      return bitmap;
+    }
+    throw new IllegalStateException("shard is not backed by a bitmap");
+  }
+
+}
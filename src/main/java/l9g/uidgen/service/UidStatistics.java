@@ -0,0 +1,43 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Map;
+
+/**
+ * Occupancy statistics of a pool.
+ *
+ * @param blockSize number of UID indices per block of the fill histogram
+ * @param fillHistogram number of blocks per 10% fill step, the last bucket
+ *                      includes completely taken blocks
+ * @param longestFreeRun longest run of consecutive free UID indices,
+ *                       {@code null} if runs are not tracked
+ * @param longestTakenRun longest run of consecutive taken UID indices
+ * @param fragmentation {@code 1 - longestFreeRun / free UIDs}, 0 while the
+ *                      free UIDs form a single run
+ * @param allocationsByOwner UIDs handed out per bearer token owner since
+ *                           the start
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UidStatistics(String pool, long numberOfUids, long takenUids,
+  long availableUids, long blockSize, int[] fillHistogram,
+  Long longestFreeRun, Long longestTakenRun, Double fragmentation,
+  Map<String, Long> allocationsByOwner)
+{
+}
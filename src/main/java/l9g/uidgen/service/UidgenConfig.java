@@ -0,0 +1,148 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Data;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Configuration
+@ConfigurationProperties(prefix = "uidgen")
+@Data
+@ToString
+public class UidgenConfig
+{
+  public final static String DEFAULT_POOL = "default";
+
+  private String uniqueTag;
+
+  private int numberOfDigits;
+
+  private String occupancy = "auto";
+
+  private int shards = 16;
+
+  private String allocationMode = "random";
+
+  private Permutation permutation = new Permutation();
+
+  private Prefetch prefetch = new Prefetch();
+
+  private Reservation reservation = new Reservation();
+
+  private DeltaSync deltaSync = new DeltaSync();
+
+  private Verify verify = new Verify();
+
+  private Statistics statistics = new Statistics();
+
+  private Map<String, Pool> pools = new LinkedHashMap<>();
+
+  @Data
+  @ToString
+  public static class Permutation
+  {
+    private String key;
+    private String stateFile = "data/permutation.state";
+  }
+
+  @Data
+  @ToString
+  public static class Prefetch
+  {
+    private boolean enabled = false;
+    private int capacity = 10000;
+    private int lowWaterMark = 2500;
+  }
+
+  @Data
+  @ToString
+  public static class Reservation
+  {
+    private boolean enabled = false;
+    private long ttl = 900000;
+    private long tick = 1000;
+  }
+
+  @Data
+  @ToString
+  public static class DeltaSync
+  {
+    private boolean enabled = true;
+    private long interval = 10000;
+    private long overlap = 60000;
+  }
+
+  @Data
+  @ToString
+  public static class Verify
+  {
+    private boolean enabled = false;
+    private int chunkSize = 100;
+    private long timeout = 5000;
+    private int maxRounds = 3;
+  }
+
+  @Data
+  @ToString
+  public static class Statistics
+  {
+    private boolean trackRuns = true;
+  }
+
+  @Data
+  @ToString
+  public static class Pool
+  {
+    private String uniqueTag;
+    private int numberOfDigits;
+    private String occupancy = "auto";
+  }
+
+  /**
+   * @return the default pool configured by {@code uidgen.unique-tag} and
+   *         {@code uidgen.number-of-digits} followed by all
+   *         {@code uidgen.pools}
+   */
+  public Map<String, Pool> getAllPools()
+  {
+    Map<String, Pool> allPools = new LinkedHashMap<>();
+
+    if(uniqueTag != null && numberOfDigits > 0)
+    {
+      Pool defaultPool = new Pool();
+      defaultPool.setUniqueTag(uniqueTag);
+      defaultPool.setNumberOfDigits(numberOfDigits);
+      defaultPool.setOccupancy(occupancy);
+      allPools.put(DEFAULT_POOL, defaultPool);
+    }
+
+    if(pools != null)
+    {
+      allPools.putAll(pools);
+    }
+
+    return allPools;
+  }
+
+}
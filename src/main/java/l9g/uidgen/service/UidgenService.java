@@ -15,18 +15,39 @@
  */
 package l9g.uidgen.service;
 
+import com.unboundid.asn1.ASN1GeneralizedTime;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+import l9g.uidgen.handler.AllocationJournal;
 import l9g.uidgen.handler.LdapHandler;
-import lombok.Getter;
+import l9g.uidgen.handler.SnapshotHandler;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 /**
+ * Registry of all configured UID pools.
+ *
+ * Every pool owns the UID space of one unique tag. All pools are loaded
+ * from a single LDAP scan, each UID is assigned to the pool with the
+ * longest matching unique tag. UIDs recorded in the allocation journal are
+ * taken on top of the LDAP scan, they may not have been created in LDAP yet.
+ *
+ * After the first full scan, entries created or modified outside this
+ * service are merged by a periodic delta sync, starting from the highest
+ * create or modify timestamp seen so far. With an LDAP persistent search
+ * new UIDs are taken the moment they appear and the delta sync only runs
+ * to catch up after the search has been (re)established.
  *
  * @author Thorsten Ludewig (t.ludewig@gmail.com)
  */
@@ -34,95 +55,427 @@ import org.springframework.stereotype.Service;
 @Service
 public class UidgenService
 {
-  private final boolean[] uidArray;
-
-  private final String outputFormat;
-  private final String uniqueTag;
+  private final Map<String, UidPool> pools = new LinkedHashMap<>();
 
-  private final Random random = new Random(System.currentTimeMillis());
+  /**
+   * Pools ordered by descending unique tag length.
+   */
+  private final List<UidPool> poolsByTagLength;
 
-  private final int maxNumberOfUids;
-  
   private final LdapHandler ldapHandler;
 
-  @Getter
-  private int availableUids;
+  private final BlockLeaseManager leaseManager;
+
+  private final AllocationJournal journal;
+
+  private final UidgenConfig.DeltaSync deltaSync;
+
+  private final ReentrantLock reloadLock = new ReentrantLock();
+
+  /**
+   * Serializes the LDAP scans, a monitor would pin a virtual thread to its
+   * carrier for the whole scan.
+   */
+  private final ReentrantLock scanLock = new ReentrantLock();
+
+  /**
+   * High-water create or modify timestamp, 0 until the first full scan.
+   */
+  private volatile long lastSyncTimestamp;
 
   public UidgenService(
-    @Value("${uidgen.number-of-digits}") int numberOfDigits,
-    @Value("${uidgen.unique-tag}") String uniqueTag,
-    LdapHandler ldapHandler
+    UidgenConfig config,
+    LdapHandler ldapHandler,
+    SnapshotHandler snapshotHandler,
+    BlockLeaseManager leaseManager,
+    AllocationJournal journal
   )
   {
-    log.debug("numberOfDigits={}", numberOfDigits);
-    maxNumberOfUids = (int)(Math.pow(10.0, (double)numberOfDigits));
-    log.debug("maxNumberOfUids={}", maxNumberOfUids);
-    this.uidArray = new boolean[maxNumberOfUids];
-    this.uniqueTag = uniqueTag;
-    this.outputFormat = String.format("%s%%0%dd", uniqueTag, numberOfDigits);
-    log.debug("outputFormat={}", outputFormat);
-    this.availableUids = maxNumberOfUids;
+    log.debug("{}", config);
+
+    config.getAllPools().forEach((name, poolConfig) ->
+    {
+      if( ! name.matches("[a-z0-9_-]+")
+        || "status".equals(name) || "initialize".equals(name)
+        || "confirm".equals(name) || "bulk".equals(name)
+        || "statistics".equals(name))
+      {
+        throw new IllegalArgumentException("invalid pool name: " + name);
+      }
+      pools.put(name, new UidPool(name, poolConfig, config, snapshotHandler,
+        leaseManager, journal, ldapHandler));
+    });
+
+    if(pools.isEmpty())
+    {
+      throw new IllegalArgumentException("no uid pool configured");
+    }
+
+    this.poolsByTagLength = new ArrayList<>(pools.values());
+    poolsByTagLength.sort(Comparator.comparingInt(
+      (UidPool pool) -> pool.getUniqueTag().length()).reversed());
+
     this.ldapHandler = ldapHandler;
+    this.leaseManager = leaseManager;
+    this.journal = journal;
+    this.deltaSync = config.getDeltaSync();
   }
 
   @PostConstruct
-  public synchronized void initialize() throws Throwable
+  public void startup() throws Throwable
+  {
+    List<UidPool> loadedPools = new ArrayList<>();
+    List<UidPool> emptyPools = new ArrayList<>();
+
+    for(UidPool pool : pools.values())
+    {
+      if(pool.isSnapshotEnabled() && pool.loadSnapshot())
+      {
+        loadedPools.add(pool);
+      }
+      else
+      {
+        emptyPools.add(pool);
+      }
+    }
+
+    if(emptyPools.isEmpty())
+    {
+      // the snapshot may be older than the last allocations
+      replayJournal(UidPool::takeUid, true);
+
+      Thread verifyThread = new Thread(
+        () -> verifySnapshots(loadedPools), "snapshot-verify");
+      verifyThread.setDaemon(true);
+      verifyThread.start();
+    }
+    else
+    {
+      // nothing is served yet, so the UIDs go straight into the tables;
+      // the scan is needed anyway, verify the loaded pools right away;
+      // the scan confirms the restored reservations found in LDAP
+      Map<UidPool, Integer> missing = new HashMap<>();
+      replayJournal(taking(missing), true);
+      scanLdap(true, taking(missing));
+      loadedPools.forEach(
+        pool -> pool.snapshotVerified(missing.getOrDefault(pool, 0)));
+    }
+
+    pools.values().forEach(UidPool::start);
+
+    ldapHandler.startPersistentSearch(this::takeLdapUid, this::mergeLdapDelta);
+  }
+
+  @PreDestroy
+  public void shutdown()
+  {
+    ldapHandler.stopPersistentSearch();
+
+    pools.values().forEach(UidPool::stop);
+
+    if(leaseManager.isEnabled())
+    {
+      leaseManager.release();
+    }
+  }
+
+  @Scheduled(initialDelayString = "${uidgen.snapshot.interval:300000}",
+             fixedDelayString = "${uidgen.snapshot.interval:300000}")
+  public void scheduledSnapshot()
+  {
+    pools.values().forEach(UidPool::saveState);
+
+    try
+    {
+      journal.compact();
+    }
+    catch(IOException e)
+    {
+      log.error("compacting allocation journal failed", e);
+    }
+  }
+
+  @Scheduled(initialDelayString = "${uidgen.lease.renew-interval:200000}",
+             fixedDelayString = "${uidgen.lease.renew-interval:200000}")
+  public void renewLeases()
+  {
+    pools.values().forEach(UidPool::renewLeases);
+  }
+
+  public Collection<UidPool> getPools()
+  {
+    return pools.values();
+  }
+
+  /**
+   * @throws UnknownPoolException if no pool with this name is configured
+   */
+  public UidPool getPool(String name)
+  {
+    UidPool pool = pools.get(name);
+    if(pool == null)
+    {
+      throw new UnknownPoolException(name);
+    }
+    return pool;
+  }
+
+  /**
+   * @return number of UIDs not yet handed out in the default pool
+   */
+  public long getAvailableUids()
+  {
+    return getAvailableUids(UidgenConfig.DEFAULT_POOL);
+  }
+
+  public long getAvailableUids(String poolName)
+  {
+    return getPool(poolName).getAvailableUids();
+  }
+
+  public UidList findUids(int numberOfUids, String owner)
+  {
+    return findUids(UidgenConfig.DEFAULT_POOL, numberOfUids, owner);
+  }
+
+  public UidList findUids(String poolName, int numberOfUids, String owner)
+  {
+    return getPool(poolName).findUids(numberOfUids, owner);
+  }
+
+  public UidStatistics getStatistics(String poolName)
+  {
+    return getPool(poolName).getStatistics();
+  }
+
+  public List<String> confirmUids(String poolName, List<String> uids)
+  {
+    return getPool(poolName).confirmUids(uids);
+  }
+
+  @Scheduled(initialDelayString = "${uidgen.reservation.tick:1000}",
+             fixedDelayString = "${uidgen.reservation.tick:1000}")
+  public void expireReservations()
+  {
+    long now = System.currentTimeMillis();
+    pools.values().forEach(pool -> pool.expireReservations(now));
+  }
+
+  public void initialize() throws Throwable
   {
     log.debug("initialize");
 
-    this.availableUids = maxNumberOfUids;
-    Arrays.fill(uidArray, false);
-    
-    int startIndex = uniqueTag.length();
-    ldapHandler.readAllLdapEntries();
-    ldapHandler.getLdapEntryMap().forEach((key,value) -> {
-      int uidIndex = (Integer.parseInt(key.substring(startIndex)));
-      uidArray[uidIndex] = true;
-      availableUids--;
-    });
-    log.debug("availableUids: {}", availableUids);
+    reloadLock.lock();
+    try
+    {
+      // the pools keep serving during the scan, the new tables are built
+      // on the side and swapped in at once
+      Map<UidPool, UidPool.Reload> reloads = new HashMap<>();
+      pools.values().forEach(pool -> reloads.put(pool, pool.beginReload()));
+
+      try
+      {
+        ObjLongConsumer<UidPool> staging =
+          (pool, uidIndex) -> reloads.get(pool).take(uidIndex);
+        scanLdap(true, staging);
+        replayJournal(staging, false);
+      }
+      catch(Throwable t)
+      {
+        reloads.values().forEach(UidPool.Reload::abort);
+        throw t;
+      }
+
+      reloads.values().forEach(UidPool.Reload::publish);
+    }
+    finally
+    {
+      reloadLock.unlock();
+    }
   }
 
-  public synchronized List<String> findUids(int numberOfUids)
+  private void verifySnapshots(List<UidPool> loadedPools)
   {
-    List<String> uidsList = new ArrayList<>();
+    try
+    {
+      Map<UidPool, Integer> missing = new HashMap<>();
+      scanLdap(true, taking(missing));
+      loadedPools.forEach(
+        pool -> pool.snapshotVerified(missing.getOrDefault(pool, 0)));
+    }
+    catch(Throwable t)
+    {
+      log.error("snapshot verification failed", t);
+    }
+  }
 
-    String uid;
+  /**
+   * Merges all entries created or modified since the last sync into the
+   * pools without clearing them.
+   */
+  @Scheduled(initialDelayString = "${uidgen.delta-sync.interval:10000}",
+             fixedDelayString = "${uidgen.delta-sync.interval:10000}")
+  public void syncLdapDelta()
+  {
+    if(deltaSync.isEnabled() && ! ldapHandler.isPersistentSearchEnabled())
+    {
+      mergeLdapDelta();
+    }
+  }
 
-    for(int i = 0; i < numberOfUids && (uid = findNextUid()) != null; i ++)
+  private void mergeLdapDelta()
+  {
+    if(lastSyncTimestamp == 0)
     {
-      uidsList.add(uid);
+      // the running full scan covers everything
+      return;
     }
 
-    return uidsList;
+    try
+    {
+      Map<UidPool, Integer> taken = new HashMap<>();
+      scanLdap(false, taking(taken));
+      taken.forEach((pool, count) ->
+        log.info("{}: delta sync took {} new UIDs", pool.getName(), count));
+    }
+    catch(Throwable t)
+    {
+      log.error("ldap delta sync failed", t);
+    }
   }
 
-  private String findNextUid()
+  /**
+   * Streams the UID indices of all entries (full) or of the entries changed
+   * since the last sync into the sink, no LDAP entry is kept.
+   */
+  private void scanLdap(boolean full, ObjLongConsumer<UidPool> sink)
+    throws Throwable
   {
-    String uid = null;
-    
-    if(availableUids > 0)
+    scanLock.lock();
+    try
     {
-      int index = random.nextInt(maxNumberOfUids);
+      long startedAt = System.currentTimeMillis();
+      // the overlap covers entries replicated with an older timestamp
+      long since = full
+        ? 0 : Math.max(1, lastSyncTimestamp - deltaSync.getOverlap());
 
-      while(uidArray[index] == true )
+      ASN1GeneralizedTime highWaterTimestamp = ldapHandler.readLdapUids(
+        new ASN1GeneralizedTime(since), uid ->
       {
-        index++;
-        if ( index == maxNumberOfUids)
+        UidPool pool = poolOf(uid);
+        if(pool != null)
         {
-          index = 0;
+          long uidIndex = pool.parseIndex(uid);
+          pool.confirmReservation(uidIndex);
+          sink.accept(pool, uidIndex);
         }
+      });
+
+      if(full)
+      {
+        // an empty directory has no timestamps, start from the scan time
+        lastSyncTimestamp = (highWaterTimestamp.getTime() > 0)
+          ? highWaterTimestamp.getTime() : startedAt;
+      }
+      else
+      {
+        lastSyncTimestamp =
+          Math.max(lastSyncTimestamp, highWaterTimestamp.getTime());
       }
+    }
+    finally
+    {
+      scanLock.unlock();
+    }
+  }
+
+  /**
+   * Called by the persistent search for every new or changed UID.
+   */
+  private void takeLdapUid(String uid)
+  {
+    UidPool pool = poolOf(uid);
+    if(pool != null)
+    {
+      long uidIndex = pool.parseIndex(uid);
+      pool.confirmReservation(uidIndex);
+      if(pool.takeUid(uidIndex))
+      {
+        log.info("{}: persistent search took {}", pool.getName(), uid);
+      }
+    }
+  }
 
-      if( ! uidArray[index])
+  /**
+   * Takes the UIDs of all journal records into the sink. Records of
+   * reservations which have been confirmed or have expired are skipped.
+   *
+   * @param restoreReservations reserve the UIDs of outstanding records
+   *                            again, only after a restart, a running pool
+   *                            still holds its reservations
+   */
+  private void replayJournal(ObjLongConsumer<UidPool> sink,
+    boolean restoreReservations)
+    throws IOException
+  {
+    long now = System.currentTimeMillis();
+    int[] skipped = new int[1];
+
+    journal.replay(record ->
+    {
+      UidPool pool = pools.get(record.poolName());
+      if(pool == null)
+      {
+        log.warn("journal: ignoring UIDs of unknown pool {}",
+          record.poolName());
+      }
+      else if( ! pool.isJournaledUidOutstanding(record.createdAt(), now))
+      {
+        skipped[0] += record.uidIndices().length;
+      }
+      else
+      {
+        if(restoreReservations)
+        {
+          pool.restoreReservations(record.uidIndices(), record.createdAt());
+        }
+        for(long uidIndex : record.uidIndices())
+        {
+          sink.accept(pool, uidIndex);
+        }
+      }
+    });
+
+    if(skipped[0] > 0)
+    {
+      log.info("journal: skipped {} UIDs of past reservations", skipped[0]);
+    }
+  }
+
+  /**
+   * @return sink taking the UIDs and counting the newly taken ones per pool
+   */
+  private static ObjLongConsumer<UidPool> taking(Map<UidPool, Integer> taken)
+  {
+    return (pool, uidIndex) ->
+    {
+      if(pool.takeUid(uidIndex))
+      {
+        taken.merge(pool, 1, Integer::sum);
+      }
+    };
+  }
+
+  private UidPool poolOf(String uid)
+  {
+    for(UidPool pool : poolsByTagLength)
+    {
+      if(pool.matches(uid))
       {
-        uidArray[index] = true;
-        availableUids --;
-        uid = String.format(outputFormat, index);
+        return pool;
       }
     }
-    
-    return uid;
+    return null;
   }
 
 }
@@ -43,6 +43,10 @@ public class BearerTokenConfig
     private String owner;
     private String description;
     private boolean enabled = false;
+    private double rate = 0;
+    private int burst = 1;
+    private int maxUids = 0;
+    private int maxConcurrent = 0;
   }
 
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.token;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+import l9g.uidgen.crypto.CryptoHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configured bearer tokens indexed by their decrypted value, shared by the
+ * HTTP and gRPC endpoints so a token has one set of limits.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+@Component
+public class BearerTokenRegistry
+{
+  private final Map<String, BearerTokenConfig.BearerToken> tokensByName;
+
+  private final Map<String, String> tokenIndex;
+
+  private final Map<String, TokenRateLimiter> limitersByName;
+
+  public BearerTokenRegistry(BearerTokenConfig config,
+    CryptoHandler cryptoHandler)
+  {
+    this.tokensByName = config.getMap();
+    this.tokenIndex = tokensByName.entrySet().stream()
+      .collect(Collectors.toUnmodifiableMap(
+        e -> cryptoHandler.decrypt(e.getValue().getToken()),
+        Map.Entry :: getKey,
+        (a, b) -> a
+      ));
+    this.limitersByName = tokensByName.entrySet().stream()
+      .collect(Collectors.toUnmodifiableMap(
+        Map.Entry :: getKey,
+        e -> new TokenRateLimiter(e.getValue())
+      ));
+  }
+
+  /**
+   * @return name of the enabled token with this value, {@code null} if it
+   *         is unknown or disabled
+   */
+  public String authenticate(String token)
+  {
+    String name = tokenIndex.get(token);
+    if(name == null)
+    {
+      return null;
+    }
+
+    BearerTokenConfig.BearerToken bt = tokensByName.get(name);
+    return (bt != null && bt.isEnabled()) ? name : null;
+  }
+
+  public BearerTokenConfig.BearerToken getToken(String name)
+  {
+    return tokensByName.get(name);
+  }
+
+  public TokenRateLimiter getLimiter(String name)
+  {
+    return limitersByName.get(name);
+  }
+
+}
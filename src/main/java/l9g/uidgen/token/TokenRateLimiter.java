@@ -0,0 +1,130 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.token;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission limits of one bearer token, checked without locks.
+ *
+ * The request rate is limited by a token bucket in its GCRA form: a single
+ * theoretical arrival time advances by the emission interval per admitted
+ * request, a request is admitted while that time is at most
+ * {@code burst - 1} intervals ahead of now.
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public class TokenRateLimiter
+{
+  private final long emissionInterval;
+
+  private final long burstTolerance;
+
+  private final int maxUids;
+
+  private final int maxConcurrent;
+
+  private final AtomicLong theoreticalArrivalTime =
+    new AtomicLong(System.nanoTime());
+
+  private final AtomicInteger concurrentRequests = new AtomicInteger();
+
+  public TokenRateLimiter(BearerTokenConfig.BearerToken token)
+  {
+    this.emissionInterval = (token.getRate() > 0)
+      ? Math.max(1, (long)(1_000_000_000L / token.getRate())) : 0;
+    this.burstTolerance = Math.max(0, token.getBurst() - 1) * emissionInterval;
+    this.maxUids = token.getMaxUids();
+    this.maxConcurrent = token.getMaxConcurrent();
+  }
+
+  public int getMaxUids()
+  {
+    return maxUids;
+  }
+
+  /**
+   * @return {@code true} if no more than {@code max-uids} are requested
+   */
+  public boolean admitsUids(int numberOfUids)
+  {
+    return maxUids <= 0 || numberOfUids <= maxUids;
+  }
+
+  /**
+   * Takes one token from the bucket.
+   *
+   * @return 0 if the request is admitted, otherwise the nanoseconds until
+   *         the next request will be admitted
+   */
+  public long acquire()
+  {
+    if(emissionInterval == 0)
+    {
+      return 0;
+    }
+
+    long now = System.nanoTime();
+
+    while(true)
+    {
+      long arrivalTime = theoreticalArrivalTime.get();
+      long start = (arrivalTime - now > 0) ? arrivalTime : now;
+      long wait = start - now - burstTolerance;
+
+      if(wait > 0)
+      {
+        return wait;
+      }
+
+      if(theoreticalArrivalTime.compareAndSet(
+        arrivalTime, start + emissionInterval))
+      {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * @return {@code false} if {@code max-concurrent} requests are running,
+   *         otherwise the request has to be ended by {@link #exit()}
+   */
+  public boolean enter()
+  {
+    if(maxConcurrent <= 0)
+    {
+      return true;
+    }
+
+    if(concurrentRequests.incrementAndGet() > maxConcurrent)
+    {
+      concurrentRequests.decrementAndGet();
+      return false;
+    }
+
+    return true;
+  }
+
+  public void exit()
+  {
+    if(maxConcurrent > 0)
+    {
+      concurrentRequests.decrementAndGet();
+    }
+  }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.token;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+public class TooManyRequestsException extends RuntimeException
+{
+  private static final long serialVersionUID = 3305298446417913830L;
+
+  private final long retryAfterSeconds;
+
+  public TooManyRequestsException(String principal, String reason,
+    long retryAfterSeconds)
+  {
+    super(reason + " for principal: " + principal);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds()
+  {
+    return retryAfterSeconds;
+  }
+
+}
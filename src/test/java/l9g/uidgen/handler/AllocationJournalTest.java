@@ -0,0 +1,241 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.handler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class AllocationJournalTest
+{
+  @TempDir
+  Path tempDir;
+
+  private Path path;
+
+  private AllocationJournal journal;
+
+  @BeforeEach
+  void setUp() throws IOException
+  {
+    path = tempDir.resolve("allocation.journal");
+    journal = open(86_400_000);
+  }
+
+  @AfterEach
+  void tearDown()
+  {
+    journal.close();
+  }
+
+  private AllocationJournal open(long retention) throws IOException
+  {
+    AllocationJournal allocationJournal = new AllocationJournal();
+    ReflectionTestUtils.setField(allocationJournal, "enabled", true);
+    ReflectionTestUtils.setField(allocationJournal, "journalFile",
+      path.toString());
+    ReflectionTestUtils.setField(allocationJournal, "retention", retention);
+    allocationJournal.open();
+    return allocationJournal;
+  }
+
+  private AllocationJournal reopen(long retention) throws IOException
+  {
+    journal.close();
+    journal = open(retention);
+    return journal;
+  }
+
+  private List<AllocationJournal.Record> replay() throws IOException
+  {
+    List<AllocationJournal.Record> records = new ArrayList<>();
+    journal.replay(records::add);
+    return records;
+  }
+
+  @Test
+  void replaysRecordsAfterReopen() throws IOException
+  {
+    journal.append("default", new long[]
+    {
+      1, 2, 3, 99
+    }, 3);
+    journal.append("staff", new long[]
+    {
+      7
+    }, 1);
+    journal.append("default", new long[0], 0);
+
+    reopen(86_400_000);
+    List<AllocationJournal.Record> records = replay();
+
+    assertEquals(2, records.size());
+    assertEquals("default", records.get(0).poolName());
+    assertArrayEquals(new long[]
+    {
+      1, 2, 3
+    }, records.get(0).uidIndices());
+    assertEquals("staff", records.get(1).poolName());
+    assertArrayEquals(new long[]
+    {
+      7
+    }, records.get(1).uidIndices());
+    assertTrue(records.get(0).createdAt() <= System.currentTimeMillis());
+  }
+
+  @Test
+  void groupCommitKeepsConcurrentAppends() throws Exception
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try
+    {
+      List<Future<?>> futures = new ArrayList<>();
+      for(int i = 0; i < 200; i++)
+      {
+        long index = i;
+        futures.add(executor.submit(() ->
+        {
+          journal.append("default", new long[]
+          {
+            index
+          }, 1);
+          return null;
+        }));
+      }
+      for(Future<?> future : futures)
+      {
+        future.get();
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+
+    reopen(86_400_000);
+    assertEquals(200, replay().stream()
+      .mapToLong(record -> record.uidIndices()[0]).distinct().count());
+  }
+
+  @Test
+  void ignoresTornTail() throws IOException
+  {
+    journal.append("default", new long[]
+    {
+      1
+    }, 1);
+    journal.append("default", new long[]
+    {
+      2
+    }, 1);
+    journal.close();
+
+    // a crash in the middle of a record
+    Files.write(path, new byte[]
+    {
+      40, 0, 0, 0, 1, 2, 3
+    }, StandardOpenOption.APPEND);
+
+    journal = open(86_400_000);
+    List<AllocationJournal.Record> records = replay();
+    assertEquals(2, records.size());
+
+    // compaction has removed the torn tail, new records are readable
+    journal.append("default", new long[]
+    {
+      3
+    }, 1);
+    reopen(86_400_000);
+    assertEquals(3, replay().size());
+  }
+
+  @Test
+  void stopsAtChecksumMismatch() throws IOException
+  {
+    journal.append("default", new long[]
+    {
+      1
+    }, 1);
+    long firstRecordEnd = Files.size(path);
+    journal.append("default", new long[]
+    {
+      2
+    }, 1);
+    journal.close();
+
+    byte[] bytes = Files.readAllBytes(path);
+    // last byte of the second UID index
+    bytes[bytes.length - 5] ^= 1;
+    Files.write(path, bytes);
+
+    journal = open(86_400_000);
+    List<AllocationJournal.Record> records = replay();
+    assertEquals(1, records.size());
+    assertArrayEquals(new long[]
+    {
+      1
+    }, records.get(0).uidIndices());
+    assertEquals(firstRecordEnd, Files.size(path));
+  }
+
+  @Test
+  void dropsRecordsOlderThanRetention() throws Exception
+  {
+    journal.append("default", new long[]
+    {
+      1
+    }, 1);
+
+    Thread.sleep(50);
+    reopen(20);
+
+    assertTrue(replay().isEmpty());
+    assertEquals(0, Files.size(path));
+  }
+
+  @Test
+  void disabledJournalIgnoresAppends() throws IOException
+  {
+    AllocationJournal disabled = new AllocationJournal();
+    ReflectionTestUtils.setField(disabled, "journalFile",
+      tempDir.resolve("disabled.journal").toString());
+    disabled.open();
+    disabled.append("default", new long[]
+    {
+      1
+    }, 1);
+
+    assertFalse(Files.exists(tempDir.resolve("disabled.journal")));
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.handler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import l9g.uidgen.occupancy.BitmapOccupancy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class SnapshotHandlerTest
+{
+  private final static int SIZE = 10_000;
+
+  @TempDir
+  Path tempDir;
+
+  private final SnapshotHandler snapshotHandler = new SnapshotHandler();
+
+  private BitmapOccupancy occupancy;
+
+  private Path path;
+
+  @BeforeEach
+  void setUp() throws IOException
+  {
+    occupancy = new BitmapOccupancy(SIZE);
+    for(int i = 0; i < SIZE; i += 7)
+    {
+      occupancy.take(i);
+    }
+
+    path = tempDir.resolve("occupancy.snapshot");
+    snapshotHandler.write(path, "unitag", SIZE, occupancy.wordCount(),
+      buffer ->
+    {
+      occupancy.writeWords(buffer);
+      return (SIZE + 6) / 7;
+    });
+  }
+
+  private int read(String uniqueTag, int size, BitmapOccupancy target)
+  {
+    return snapshotHandler.read(path, uniqueTag, size, target.wordCount(),
+      target::readWords);
+  }
+
+  @Test
+  void roundTrip()
+  {
+    BitmapOccupancy loaded = new BitmapOccupancy(SIZE);
+
+    assertEquals((SIZE + 6) / 7, read("unitag", SIZE, loaded));
+    for(int i = 0; i < SIZE; i++)
+    {
+      assertEquals(i % 7 == 0, loaded.isTaken(i), "slot " + i);
+    }
+  }
+
+  @Test
+  void missingFile()
+  {
+    path = tempDir.resolve("missing.snapshot");
+    assertEquals(-1, read("unitag", SIZE, new BitmapOccupancy(SIZE)));
+  }
+
+  @Test
+  void rejectsOtherConfiguration()
+  {
+    assertEquals(-1, read("other", SIZE, new BitmapOccupancy(SIZE)));
+    assertEquals(-1, read("unitag", SIZE - 1, new BitmapOccupancy(SIZE - 1)));
+  }
+
+  @Test
+  void rejectsCorruptedWords() throws IOException
+  {
+    try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+    {
+      channel.write(ByteBuffer.allocate(1).put(0, (byte)0x55), 64 + 100);
+    }
+
+    BitmapOccupancy loaded = new BitmapOccupancy(SIZE);
+    assertEquals(-1, read("unitag", SIZE, loaded));
+    // the table is left untouched
+    assertFalse(loaded.isTaken(0));
+  }
+
+  @Test
+  void rejectsTruncatedFile() throws IOException
+  {
+    try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+    {
+      channel.truncate(channel.size() - 8);
+    }
+
+    assertEquals(-1, read("unitag", SIZE, new BitmapOccupancy(SIZE)));
+  }
+
+}
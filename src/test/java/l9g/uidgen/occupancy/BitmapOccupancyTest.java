@@ -0,0 +1,167 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+import java.nio.LongBuffer;
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class BitmapOccupancyTest
+{
+  @Test
+  void takeAndRelease()
+  {
+    BitmapOccupancy occupancy = new BitmapOccupancy(1000);
+
+    assertEquals(1000, occupancy.size());
+    assertFalse(occupancy.isTaken(63));
+    assertTrue(occupancy.take(63));
+    assertFalse(occupancy.take(63));
+    assertTrue(occupancy.isTaken(63));
+    assertFalse(occupancy.isTaken(64));
+
+    assertTrue(occupancy.release(63));
+    assertFalse(occupancy.release(63));
+    assertFalse(occupancy.isTaken(63));
+  }
+
+  @Test
+  void clearFreesAllSlots()
+  {
+    BitmapOccupancy occupancy = new BitmapOccupancy(200);
+    for(int i = 0; i < 200; i++)
+    {
+      occupancy.take(i);
+    }
+
+    occupancy.clear();
+
+    for(int i = 0; i < 200; i++)
+    {
+      assertFalse(occupancy.isTaken(i));
+    }
+  }
+
+  @Test
+  void matchesBitSet()
+  {
+    Random random = new Random(1);
+    BitmapOccupancy occupancy = new BitmapOccupancy(10_007);
+    BitSet expected = new BitSet();
+
+    for(int i = 0; i < 50_000; i++)
+    {
+      int index = random.nextInt(10_007);
+      if(random.nextBoolean())
+      {
+        assertEquals( ! expected.get(index), occupancy.take(index));
+        expected.set(index);
+      }
+      else
+      {
+        assertEquals(expected.get(index), occupancy.release(index));
+        expected.clear(index);
+      }
+    }
+
+    for(int i = 0; i < 10_007; i++)
+    {
+      assertEquals(expected.get(i), occupancy.isTaken(i), "slot " + i);
+    }
+  }
+
+  @Test
+  void nextFreeSkipsFullRanges()
+  {
+    // 64^3 + 5 slots need four summary levels
+    int size = 64 * 64 * 64 + 5;
+    BitmapOccupancy occupancy = new BitmapOccupancy(size);
+
+    for(int i = 0; i < size - 1; i++)
+    {
+      occupancy.take(i);
+    }
+
+    assertEquals(size - 1, occupancy.nextFree(0));
+    occupancy.take(size - 1);
+    assertEquals(-1, occupancy.nextFree(0));
+
+    occupancy.release(4096 * 3 + 17);
+    assertEquals(4096 * 3 + 17, occupancy.nextFree(0));
+    assertEquals(4096 * 3 + 17, occupancy.nextFree(4096 * 3 + 17));
+    assertEquals(-1, occupancy.nextFree(4096 * 3 + 18));
+  }
+
+  @Test
+  void nextFreeMatchesBitSet()
+  {
+    Random random = new Random(2);
+    int size = 300_000;
+    BitmapOccupancy occupancy = new BitmapOccupancy(size);
+    BitSet taken = new BitSet(size);
+
+    // dense with a few holes, so the summary levels are exercised
+    taken.set(0, size);
+    for(int i = 0; i < 50; i++)
+    {
+      taken.clear(random.nextInt(size));
+    }
+    for(int i = taken.nextSetBit(0); i >= 0; i = taken.nextSetBit(i + 1))
+    {
+      occupancy.take(i);
+    }
+
+    for(int i = 0; i < 1000; i++)
+    {
+      int from = random.nextInt(size);
+      int expected = taken.nextClearBit(from);
+      assertEquals(expected < size ? expected : -1, occupancy.nextFree(from),
+        "from " + from);
+    }
+  }
+
+  @Test
+  void readWordsRebuildsSummary()
+  {
+    int size = 64 * 64 * 3;
+    BitmapOccupancy source = new BitmapOccupancy(size);
+    for(int i = 0; i < size; i++)
+    {
+      if(i != 64 * 64 + 5)
+      {
+        source.take(i);
+      }
+    }
+
+    LongBuffer buffer = LongBuffer.allocate(source.wordCount());
+    source.writeWords(buffer);
+
+    BitmapOccupancy loaded = new BitmapOccupancy(size);
+    assertEquals(size - 1, loaded.readWords(buffer.flip()));
+    assertEquals(64 * 64 + 5, loaded.nextFree(0));
+
+    loaded.take(64 * 64 + 5);
+    assertEquals(-1, loaded.nextFree(0));
+  }
+
+}
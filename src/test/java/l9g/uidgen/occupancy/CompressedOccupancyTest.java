@@ -0,0 +1,136 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class CompressedOccupancyTest
+{
+  private final static long SIZE = 1_000_000_000_000_000_000L;
+
+  @Test
+  void takeAndReleaseInHugeSpace()
+  {
+    CompressedOccupancy occupancy = new CompressedOccupancy(SIZE);
+
+    assertEquals(SIZE, occupancy.size());
+    assertTrue(occupancy.take(SIZE - 1));
+    assertFalse(occupancy.take(SIZE - 1));
+    assertTrue(occupancy.isTaken(SIZE - 1));
+    assertEquals(1, occupancy.chunkCount());
+
+    assertTrue(occupancy.release(SIZE - 1));
+    assertFalse(occupancy.release(SIZE - 1));
+    assertEquals(0, occupancy.chunkCount());
+  }
+
+  @Test
+  void convertsBetweenArrayAndBitmapContainers()
+  {
+    CompressedOccupancy occupancy = new CompressedOccupancy(1 << 20);
+
+    // more than 4096 slots in one chunk turn the array into a bitmap
+    for(int i = 0; i < 10_000; i++)
+    {
+      assertTrue(occupancy.take(i * 3));
+    }
+    for(int i = 0; i < 10_000; i++)
+    {
+      assertTrue(occupancy.isTaken(i * 3));
+      assertFalse(occupancy.isTaken(i * 3 + 1));
+    }
+
+    for(int i = 0; i < 10_000; i++)
+    {
+      assertTrue(occupancy.release(i * 3));
+    }
+    assertEquals(0, occupancy.chunkCount());
+  }
+
+  @Test
+  void nextFreeSkipsFullChunks()
+  {
+    CompressedOccupancy occupancy = new CompressedOccupancy(1 << 20);
+
+    for(int i = 0; i < (1 << 17) + 10; i++)
+    {
+      occupancy.take(i);
+    }
+
+    assertEquals((1 << 17) + 10, occupancy.nextFree(0));
+    assertEquals((1 << 17) + 11, occupancy.nextFree((1 << 17) + 11));
+
+    occupancy.release(70_000);
+    assertEquals(70_000, occupancy.nextFree(5));
+  }
+
+  @Test
+  void nextFreeAtEndOfSpace()
+  {
+    CompressedOccupancy occupancy = new CompressedOccupancy(100);
+
+    for(int i = 0; i < 100; i++)
+    {
+      occupancy.take(i);
+    }
+    assertEquals(-1, occupancy.nextFree(0));
+
+    occupancy.clear();
+    assertEquals(0, occupancy.nextFree(0));
+    assertEquals(0, occupancy.chunkCount());
+  }
+
+  @Test
+  void matchesBitmapOccupancy()
+  {
+    Random random = new Random(3);
+    int size = 300_000;
+    CompressedOccupancy compressed = new CompressedOccupancy(size);
+    BitmapOccupancy bitmap = new BitmapOccupancy(size);
+    TreeSet<Integer> touched = new TreeSet<>();
+
+    for(int i = 0; i < 200_000; i++)
+    {
+      // a dense cluster next to sparse slots
+      int index = random.nextBoolean()
+        ? random.nextInt(70_000) : random.nextInt(size);
+      touched.add(index);
+      if(random.nextInt(4) > 0)
+      {
+        assertEquals(bitmap.take(index), compressed.take(index));
+      }
+      else
+      {
+        assertEquals(bitmap.release(index), compressed.release(index));
+      }
+    }
+
+    for(int index : touched)
+    {
+      assertEquals(bitmap.isTaken(index), compressed.isTaken(index));
+      assertEquals(bitmap.nextFree(index), compressed.nextFree(index));
+    }
+  }
+
+}
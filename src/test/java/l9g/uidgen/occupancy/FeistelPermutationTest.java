@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+import java.util.BitSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class FeistelPermutationTest
+{
+  /**
+   * Domain sizes just above a power of two need the most cycle walking.
+   */
+  @ParameterizedTest
+  @ValueSource(longs =
+  {
+    1, 2, 3, 5, 64, 65, 1000, 4097, 100_000, 262_145
+  })
+  void isBijection(long domainSize)
+  {
+    FeistelPermutation permutation = new FeistelPermutation(domainSize, 42);
+    BitSet images = new BitSet((int)domainSize);
+
+    for(long value = 0; value < domainSize; value++)
+    {
+      long image = permutation.permute(value);
+      assertTrue(image >= 0 && image < domainSize, "image " + image);
+      assertFalse(images.get((int)image), "duplicate image " + image);
+      images.set((int)image);
+    }
+
+    assertEquals(domainSize, images.cardinality());
+  }
+
+  @Test
+  void dependsOnKey()
+  {
+    FeistelPermutation a = new FeistelPermutation(1_000_000, 1);
+    FeistelPermutation b = new FeistelPermutation(1_000_000, 2);
+
+    int equal = 0;
+    for(long value = 0; value < 1000; value++)
+    {
+      assertEquals(a.permute(value),
+        new FeistelPermutation(1_000_000, 1).permute(value));
+      if(a.permute(value) == b.permute(value))
+      {
+        equal++;
+      }
+    }
+
+    assertTrue(equal < 10, "equal images " + equal);
+  }
+
+  @Test
+  void largeDomain()
+  {
+    long domainSize = 1_000_000_000_000_000_000L;
+    FeistelPermutation permutation = new FeistelPermutation(domainSize, 7);
+
+    for(long value = domainSize - 1000; value < domainSize; value++)
+    {
+      long image = permutation.permute(value);
+      assertTrue(image >= 0 && image < domainSize);
+    }
+  }
+
+  @Test
+  void rejectsValuesOutsideDomain()
+  {
+    FeistelPermutation permutation = new FeistelPermutation(100, 0);
+
+    assertThrows(IllegalArgumentException.class, () -> permutation.permute(-1));
+    assertThrows(IllegalArgumentException.class,
+      () -> permutation.permute(100));
+    assertThrows(IllegalArgumentException.class,
+      () -> new FeistelPermutation(0, 0));
+  }
+
+}
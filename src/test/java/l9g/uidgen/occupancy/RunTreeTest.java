@@ -0,0 +1,208 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.occupancy;
+
+import java.nio.LongBuffer;
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class RunTreeTest
+{
+  /**
+   * Computes the runs of {@code bits[from, to)} slot by slot.
+   */
+  private static RunSummary naive(BitSet bits, int from, int to)
+  {
+    long leadingFree = 0, leadingTaken = 0;
+    long trailingFree = 0, trailingTaken = 0;
+    long longestFree = 0, longestTaken = 0;
+    boolean leading = true;
+
+    for(int i = from; i < to; i++)
+    {
+      if(bits.get(i))
+      {
+        trailingTaken++;
+        trailingFree = 0;
+        longestTaken = Math.max(longestTaken, trailingTaken);
+      }
+      else
+      {
+        trailingFree++;
+        trailingTaken = 0;
+        longestFree = Math.max(longestFree, trailingFree);
+      }
+
+      leading = leading && (bits.get(i) == bits.get(from));
+      if(leading)
+      {
+        leadingFree = trailingFree;
+        leadingTaken = trailingTaken;
+      }
+    }
+
+    return new RunSummary(to - from, leadingFree, trailingFree, longestFree,
+      leadingTaken, trailingTaken, longestTaken);
+  }
+
+  @Test
+  void untrackedBitmapHasNoRuns()
+  {
+    assertNull(new BitmapOccupancy(100).runs());
+  }
+
+  @Test
+  void emptyAndFullBitmap()
+  {
+    BitmapOccupancy occupancy = new BitmapOccupancy(1000, true);
+    assertEquals(new RunSummary(1000, 1000, 1000, 1000, 0, 0, 0),
+      occupancy.runs());
+
+    for(int i = 0; i < 1000; i++)
+    {
+      occupancy.take(i);
+    }
+    assertEquals(new RunSummary(1000, 0, 0, 0, 1000, 1000, 1000),
+      occupancy.runs());
+
+    occupancy.clear();
+    assertEquals(new RunSummary(1000, 1000, 1000, 1000, 0, 0, 0),
+      occupancy.runs());
+  }
+
+  @Test
+  void matchesNaiveRuns()
+  {
+    Random random = new Random(3);
+    int size = 5_003;
+    BitmapOccupancy occupancy = new BitmapOccupancy(size, true);
+    BitSet expected = new BitSet();
+
+    for(int i = 0; i < 20_000; i++)
+    {
+      // long runs of takes and releases, so runs span several words
+      int from = random.nextInt(size);
+      int to = Math.min(size, from + random.nextInt(300));
+      boolean take = random.nextInt(3) > 0;
+      for(int index = from; index < to; index++)
+      {
+        if(take)
+        {
+          occupancy.take(index);
+          expected.set(index);
+        }
+        else
+        {
+          occupancy.release(index);
+          expected.clear(index);
+        }
+      }
+
+      if(i % 100 == 0)
+      {
+        assertEquals(naive(expected, 0, size), occupancy.runs());
+      }
+    }
+
+    assertEquals(naive(expected, 0, size), occupancy.runs());
+  }
+
+  @Test
+  void readWordsRebuildsRuns()
+  {
+    Random random = new Random(5);
+    int size = 3_000;
+    BitmapOccupancy source = new BitmapOccupancy(size);
+    BitSet expected = new BitSet();
+
+    for(int index = 0; index < size; index++)
+    {
+      if(index % 700 < 500 && random.nextInt(10) > 0)
+      {
+        source.take(index);
+        expected.set(index);
+      }
+    }
+
+    LongBuffer buffer = LongBuffer.allocate(source.wordCount());
+    source.writeWords(buffer);
+    buffer.flip();
+
+    BitmapOccupancy occupancy = new BitmapOccupancy(size, true);
+    occupancy.readWords(buffer);
+
+    assertEquals(naive(expected, 0, size), occupancy.runs());
+  }
+
+  @Test
+  void appendCombinesAdjacentRanges()
+  {
+    Random random = new Random(7);
+    BitSet bits = new BitSet();
+    for(int index = 0; index < 2_000; index++)
+    {
+      if((index / 50) % 3 != 0 || random.nextInt(20) == 0)
+      {
+        bits.set(index);
+      }
+    }
+
+    for(int split = 1; split < 2_000; split += 37)
+    {
+      assertEquals(naive(bits, 0, 2_000),
+        naive(bits, 0, split).append(naive(bits, split, 2_000)),
+        "split at " + split);
+    }
+
+    // completely free and completely taken ranges
+    assertEquals(naive(bits, 0, 10).append(naive(bits, 10, 60)),
+      naive(bits, 0, 60));
+    assertEquals(naive(bits, 50, 100).append(naive(bits, 100, 150)),
+      naive(bits, 50, 150));
+  }
+
+  @Test
+  void countTakenMatchesBitSet()
+  {
+    Random random = new Random(9);
+    int size = 1_000;
+    BitmapOccupancy occupancy = new BitmapOccupancy(size);
+    BitSet expected = new BitSet();
+
+    for(int i = 0; i < 600; i++)
+    {
+      int index = random.nextInt(size);
+      occupancy.take(index);
+      expected.set(index);
+    }
+
+    for(int i = 0; i < 1_000; i++)
+    {
+      int from = random.nextInt(size + 1);
+      int to = from + random.nextInt(size - from + 1);
+      assertEquals(expected.get(from, to).cardinality(),
+        occupancy.countTaken(from, to), "[" + from + ", " + to + ")");
+    }
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.util.Arrays;
+import java.util.Random;
+import l9g.uidgen.occupancy.BitmapOccupancy;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class BlockFillTest
+{
+  @Test
+  void blockSizeLimitsNumberOfBlocks()
+  {
+    assertEquals(4096, BlockFill.blockSize(0));
+    assertEquals(4096, BlockFill.blockSize(4096L * 16383));
+    assertEquals(8192, BlockFill.blockSize(4096L * 16384));
+    assertEquals(65536, BlockFill.blockSize(1_000_000_000));
+    assertTrue(1_000_000_000 / BlockFill.blockSize(1_000_000_000) < 16384);
+  }
+
+  @Test
+  void emptyBlocksAreInFirstBucket()
+  {
+    BlockFill fill = new BlockFill(10_000, 4096);
+    int[] histogram = fill.histogram();
+
+    assertEquals(BlockFill.BUCKETS, histogram.length);
+    assertEquals(3, histogram[0]);
+  }
+
+  @Test
+  void lastBucketIncludesFullBlocks()
+  {
+    // the last block has only 100 slots
+    BlockFill fill = new BlockFill(4196, 4096);
+    for(int index = 4096; index < 4196; index++)
+    {
+      fill.take(index);
+    }
+
+    assertArrayEquals(new int[]
+    {
+      1, 0, 0, 0, 0, 0, 0, 0, 0, 1
+    }, fill.histogram());
+
+    fill.release(4096);
+    assertArrayEquals(new int[]
+    {
+      1, 0, 0, 0, 0, 0, 0, 0, 0, 1
+    }, fill.histogram());
+
+    for(int index = 4097; index < 4107; index++)
+    {
+      fill.release(index);
+    }
+    assertArrayEquals(new int[]
+    {
+      1, 0, 0, 0, 0, 0, 0, 0, 1, 0
+    }, fill.histogram());
+  }
+
+  @Test
+  void incrementalMatchesRebuild()
+  {
+    Random random = new Random(11);
+    int size = 100_003;
+    long blockSize = BlockFill.blockSize(size);
+    BitmapOccupancy bitmap = new BitmapOccupancy(size);
+    BlockFill fill = new BlockFill(size, blockSize);
+
+    for(int i = 0; i < 200_000; i++)
+    {
+      int index = random.nextInt(size);
+      // blocks of different fill levels
+      if(random.nextInt((int)(index / blockSize) + 2) > 0)
+      {
+        if(bitmap.take(index))
+        {
+          fill.take(index);
+        }
+      }
+      else if(bitmap.release(index))
+      {
+        fill.release(index);
+      }
+    }
+
+    BlockFill rebuilt = new BlockFill(size, blockSize);
+    rebuilt.rebuild(bitmap);
+
+    assertArrayEquals(rebuilt.histogram(), fill.histogram());
+    assertEquals(25, Arrays.stream(fill.histogram()).sum());
+
+    fill.clear();
+    assertEquals(25, fill.histogram()[0]);
+  }
+
+}
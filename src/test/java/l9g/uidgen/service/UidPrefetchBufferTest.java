@@ -0,0 +1,100 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class UidPrefetchBufferTest
+{
+  private final AtomicLong nextIndex = new AtomicLong();
+
+  private final UidPrefetchBuffer buffer = new UidPrefetchBuffer(1000, 250,
+    (target, offset, count) ->
+  {
+    for(int i = 0; i < count; i++)
+    {
+      target[offset + i] = nextIndex.getAndIncrement();
+    }
+    return count;
+  }, indices ->
+  {
+  });
+
+  @AfterEach
+  void tearDown()
+  {
+    buffer.stop();
+  }
+
+  private void awaitSize(int size) throws InterruptedException
+  {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while(buffer.size() != size && System.nanoTime() < deadline)
+    {
+      Thread.sleep(10);
+    }
+    assertEquals(size, buffer.size());
+  }
+
+  @Test
+  void fillsOnStart() throws InterruptedException
+  {
+    buffer.start();
+    awaitSize(1000);
+
+    long[] target = new long[10];
+    assertEquals(10, buffer.take(target, 0, 10));
+    assertArrayEquals(new long[]
+    {
+      0, 1, 2, 3, 4, 5, 6, 7, 8, 9
+    }, target);
+  }
+
+  @Test
+  void refillsOnlyBelowLowWaterMark() throws InterruptedException
+  {
+    buffer.start();
+    awaitSize(1000);
+
+    buffer.take(new long[700], 0, 700);
+    // longer than the retry interval of the filler
+    Thread.sleep(1500);
+    assertEquals(300, buffer.size());
+
+    buffer.take(new long[100], 0, 100);
+    awaitSize(1000);
+  }
+
+  @Test
+  void refillsAfterClear() throws InterruptedException
+  {
+    buffer.start();
+    awaitSize(1000);
+
+    assertEquals(1000, buffer.clear().length);
+    awaitSize(1000);
+  }
+
+}
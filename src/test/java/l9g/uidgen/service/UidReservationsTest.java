@@ -0,0 +1,145 @@
+/*
+ * Copyright 2025 Thorsten Ludewig (t.ludewig@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package l9g.uidgen.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Thorsten Ludewig (t.ludewig@gmail.com)
+ */
+class UidReservationsTest
+{
+  @Test
+  void expiresAtDeadline()
+  {
+    UidReservations reservations = new UidReservations(100, 1000);
+    reservations.reserve(new long[]
+    {
+      1, 2, 3
+    }, 2, 1250);
+
+    assertEquals(2, reservations.size());
+    assertEquals(0, reservations.expire(1200).length);
+
+    long[] expired = reservations.expire(1300);
+    Arrays.sort(expired);
+    assertArrayEquals(new long[]
+    {
+      1, 2
+    }, expired);
+    assertEquals(0, reservations.size());
+  }
+
+  @Test
+  void confirmPreventsExpiry()
+  {
+    UidReservations reservations = new UidReservations(1, 0);
+    reservations.reserve(new long[]
+    {
+      1, 2
+    }, 2, 10);
+
+    assertTrue(reservations.confirm(1));
+    assertFalse(reservations.confirm(1));
+    assertFalse(reservations.confirm(3));
+    assertArrayEquals(new long[]
+    {
+      2
+    }, reservations.indices());
+    assertArrayEquals(new long[]
+    {
+      2
+    }, reservations.expire(10));
+  }
+
+  @Test
+  void reserveAgainReplacesDeadline()
+  {
+    UidReservations reservations = new UidReservations(1, 0);
+    reservations.reserve(new long[]
+    {
+      1
+    }, 1, 10);
+    reservations.reserve(new long[]
+    {
+      1
+    }, 1, 5000);
+
+    assertEquals(1, reservations.size());
+    assertEquals(0, reservations.expire(4999).length);
+    assertArrayEquals(new long[]
+    {
+      1
+    }, reservations.expire(5000));
+  }
+
+  @Test
+  void pastDeadlineExpiresOnNextTick()
+  {
+    UidReservations reservations = new UidReservations(1, 100);
+    reservations.reserve(new long[]
+    {
+      1
+    }, 1, 50);
+
+    assertArrayEquals(new long[]
+    {
+      1
+    }, reservations.expire(101));
+  }
+
+  @Test
+  void cascadesThroughAllLevels()
+  {
+    Random random = new Random(42);
+    long start = 12_345;
+    UidReservations reservations = new UidReservations(1, start);
+    Map<Long, Long> deadlines = new HashMap<>();
+
+    for(long uidIndex = 0; uidIndex < 1000; uidIndex++)
+    {
+      // up to beyond 64^3 ticks, so entries start on every level
+      long deadline = start + 1 + random.nextInt(300_000);
+      deadlines.put(uidIndex, deadline);
+      reservations.reserve(new long[]
+      {
+        uidIndex
+      }, 1, deadline);
+    }
+
+    assertEquals(1000, reservations.size());
+
+    int expiredCount = 0;
+    for(long now = start + 1; now <= start + 300_001; now++)
+    {
+      for(long uidIndex : reservations.expire(now))
+      {
+        assertEquals(deadlines.get(uidIndex), now, "uid index " + uidIndex);
+        expiredCount++;
+      }
+    }
+
+    assertEquals(1000, expiredCount);
+  }
+
+}